@@ -0,0 +1,651 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * B+Tree whose nodes live in {@link NodeArena} slabs instead of one object per node.
+ * <p>
+ * Same layout and insert algorithm as {@link BTree}: records live in the linked leaves, internal nodes
+ * hold separator keys, and full internal nodes are split on the way down. A node is an int handle into one of
+ * two arenas, so the whole tree is a handful of large arrays that the garbage collector never has to trace
+ * node by node. Which arena a handle belongs to follows from its level: every leaf is at level 0.
+ * <pre>
+ * leaf      longs: keys[2t - 1], values[2t - 1]   ints: count, next leaf, previous leaf
+ * internal  longs: keys[2t - 1]                   ints: count, children[2t]
+ * </pre>
+ * With packed leaves, the longs of a leaf hold a {@link PackedLeaf} encoding instead and its ints end with
+ * the format of that encoding. A packed leaf takes records until they no longer fit in its 2(2t - 1) words,
+ * up to {@link #PACKED_CAPACITY} times as many as a plain leaf, so closely spaced student IDs need fewer
+ * leaves and often fewer levels.
+ * <p>
+ * A leaf that loses its last record is unlinked and returned to its arena, and so is every internal node
+ * left without children; a root with a single child is replaced by that child. Later splits reuse the
+ * freed handles before the arenas grow. Unlike {@link BTree#delete(long)}, deletes never borrow from or
+ * merge with a sibling, so a leaf that still holds records may fall below the minimum occupancy.
+ */
+class ArenaBTree {
+
+    /**
+     * How many more records a packed leaf may hold than a plain one.
+     */
+    static final int PACKED_CAPACITY = 4;
+
+    private static final int COUNT = 0;
+    private static final int NEXT = 1;
+    private static final int PREV = 2;
+    private static final int FORMAT = 3;
+    private static final int CHILDREN = 1;
+
+    /**
+     * Minimum degree of the tree; every node holds at most 2t - 1 keys.
+     */
+    private final int t;
+    private final int maxKeys;
+    private final NodeArena leaves;
+    private final NodeArena inner;
+    /**
+     * Strategy used to search the keys inside an internal node or plain leaf.
+     */
+    private final KeySearch keySearch;
+    /**
+     * True if the leaves are stored as {@link PackedLeaf} encodings.
+     */
+    private final boolean packed;
+    /**
+     * Most records a leaf can hold.
+     */
+    private final int leafCapacity;
+    /**
+     * Decoded records of the packed leaf being changed.
+     */
+    private final long[] scratchKeys;
+    private final long[] scratchValues;
+    /**
+     * Handle of the root node, NONE when the tree is empty.
+     */
+    private int root = NodeArena.NONE;
+    /**
+     * Number of levels, 0 when the tree is empty.
+     */
+    private int height;
+    /**
+     * Internal nodes and child indexes on the path of the last delete, by level.
+     */
+    private int[] path = new int[0];
+    private int[] slots = new int[0];
+
+    ArenaBTree(int t) {
+        this(t, false);
+    }
+
+    ArenaBTree(int t, boolean packedLeaves) {
+        this(t, KeySearch.forDegree(t), packedLeaves);
+    }
+
+    ArenaBTree(int t, KeySearch keySearch, boolean packedLeaves) {
+        if (t < 2) {
+            throw new IllegalArgumentException("Minimum degree must be at least 2: " + t);
+        }
+        this.t = t;
+        this.maxKeys = 2 * t - 1;
+        this.leaves = new NodeArena(2 * maxKeys, packedLeaves ? 4 : 3);
+        this.inner = new NodeArena(maxKeys, 1 + 2 * t);
+        this.keySearch = keySearch;
+        this.packed = packedLeaves;
+        this.leafCapacity = packedLeaves ? PACKED_CAPACITY * maxKeys : maxKeys;
+        this.scratchKeys = packedLeaves ? new long[leafCapacity + 1] : null;
+        this.scratchValues = packedLeaves ? new long[leafCapacity + 1] : null;
+    }
+
+    int degree() {
+        return t;
+    }
+
+    int height() {
+        return height;
+    }
+
+    /**
+     * @return The number of nodes in the tree.
+     */
+    int nodes() {
+        return leaves.size() + inner.size();
+    }
+
+    /**
+     * @return The bytes taken by the node slabs, without array headers.
+     */
+    long footprint() {
+        return leaves.footprint() + inner.footprint();
+    }
+
+    /**
+     * Search for the record ID of the given student.
+     *
+     * @param studentId The student ID to search for.
+     * @return The record ID, or -1 if the student is not found.
+     */
+    long search(long studentId) {
+        if (root == NodeArena.NONE) {
+            return -1;
+        }
+        int leaf = findLeaf(studentId);
+        long[] longs = leaves.longs(leaf);
+        int base = leaves.longOffset(leaf);
+        int[] ints = leaves.ints(leaf);
+        int intBase = leaves.intOffset(leaf);
+        int n = ints[intBase + COUNT];
+        if (packed) {
+            int format = ints[intBase + FORMAT];
+            int i = PackedLeaf.lowerBound(longs, base, format, n, studentId);
+            return i < n && PackedLeaf.key(longs, base, format, i) == studentId
+                    ? PackedLeaf.value(longs, base, format, n, i) : -1;
+        }
+        int i = keySearch.lowerBound(longs, base, n, studentId);
+        return i < n && longs[base + i] == studentId ? longs[base + maxKeys + i] : -1;
+    }
+
+    /**
+     * Insert a key-value pair. Full internal nodes are split on the way down, and the leaf when it turns
+     * out to have no room.
+     *
+     * @param studentId The student ID.
+     * @param recordId  The record ID.
+     */
+    void insert(long studentId, long recordId) {
+        if (root == NodeArena.NONE) {
+            root = newLeaf();
+            height = 1;
+        }
+        while (!tryInsert(studentId, recordId)) {
+            // A packed leaf had no room even after a split, and its parent filled up. Start over; the
+            // descent splits the parent this time.
+        }
+    }
+
+    /**
+     * Remove the record of the given student from its leaf, and give back the nodes that end up empty.
+     *
+     * @param studentId The student ID to delete.
+     * @return True if the record was found and removed.
+     */
+    boolean delete(long studentId) {
+        if (root == NodeArena.NONE) {
+            return false;
+        }
+        if (path.length < height) {
+            path = new int[height];
+            slots = new int[height];
+        }
+        int node = root;
+        for (int level = height - 1; level > 0; level--) {
+            int[] ints = inner.ints(node);
+            int intBase = inner.intOffset(node);
+            int i = keySearch.upperBound(inner.longs(node), inner.longOffset(node), ints[intBase + COUNT], studentId);
+            path[level] = node;
+            slots[level] = i;
+            node = ints[intBase + CHILDREN + i];
+        }
+
+        int n = count(node, 0);
+        int index = leafLowerBound(node, studentId);
+        if (index == n || leafKey(node, index) != studentId) {
+            return false;
+        }
+        removeFromLeaf(node, index);
+        if (n == 1) {
+            removeLeaf(node);
+        }
+        return true;
+    }
+
+    /**
+     * Replace the contents of the tree with one built bottom-up from sorted keys.
+     *
+     * @param keys       The student IDs, in ascending order.
+     * @param values     The record IDs, in the same order.
+     * @param fillFactor Fraction of each node to fill, in (0, 1]. Packed leaves are filled to that
+     *                   fraction of their words.
+     */
+    void bulkLoad(long[] keys, long[] values, double fillFactor) {
+        if (fillFactor <= 0 || fillFactor > 1) {
+            throw new IllegalArgumentException("Fill factor must be in (0, 1]: " + fillFactor);
+        }
+        leaves.clear();
+        inner.clear();
+        root = NodeArena.NONE;
+        height = 0;
+        int count = keys.length;
+        if (count == 0) {
+            return;
+        }
+
+        // Leaf level: pack the sorted keys into linked leaves.
+        int[] level;
+        long[] minKeys;
+        if (packed) {
+            level = new int[16];
+            minKeys = new long[16];
+            int budget = (int) (fillFactor * 2 * maxKeys);
+            int groups = 0;
+            for (int pos = 0; pos < count; groups++) {
+                // Take the longest run of records that stays within the budget; a single one always fits.
+                int low = 1;
+                int high = Math.min(leafCapacity, count - pos);
+                while (low < high) {
+                    int n = (low + high + 1) >>> 1;
+                    if (PackedLeaf.words(n, PackedLeaf.format(keys, values, pos, n)) <= budget) {
+                        low = n;
+                    } else {
+                        high = n - 1;
+                    }
+                }
+                int leaf = newLeaf();
+                int[] ints = leaves.ints(leaf);
+                int intBase = leaves.intOffset(leaf);
+                ints[intBase + FORMAT] = PackedLeaf.encode(keys, values, pos, low, leaves.longs(leaf), leaves.longOffset(leaf));
+                ints[intBase + COUNT] = low;
+                if (groups == level.length) {
+                    level = Arrays.copyOf(level, 2 * groups);
+                    minKeys = Arrays.copyOf(minKeys, 2 * groups);
+                }
+                link(groups > 0 ? level[groups - 1] : NodeArena.NONE, leaf);
+                level[groups] = leaf;
+                minKeys[groups] = keys[pos];
+                pos += low;
+            }
+            level = Arrays.copyOf(level, groups);
+            minKeys = Arrays.copyOf(minKeys, groups);
+        } else {
+            int leafKeys = Math.max(t - 1, Math.min(maxKeys, (int) Math.ceil(fillFactor * maxKeys)));
+            int groups = BTree.levelGroups(count, leafKeys, t - 1);
+            level = new int[groups];
+            minKeys = new long[groups];
+            int pos = 0;
+            for (int g = 0; g < groups; g++) {
+                int leaf = newLeaf();
+                long[] longs = leaves.longs(leaf);
+                int base = leaves.longOffset(leaf);
+                int n = BTree.groupSize(count, groups, g);
+                System.arraycopy(keys, pos, longs, base, n);
+                System.arraycopy(values, pos, longs, base + maxKeys, n);
+                leaves.ints(leaf)[leaves.intOffset(leaf) + COUNT] = n;
+                link(g > 0 ? level[g - 1] : NodeArena.NONE, leaf);
+                level[g] = leaf;
+                minKeys[g] = keys[pos];
+                pos += n;
+            }
+        }
+        height = 1;
+
+        // Internal levels: the separator in front of each child is the smallest key in its subtree.
+        int fanout = Math.max(t, Math.min(2 * t, (int) Math.ceil(fillFactor * 2 * t)));
+        while (level.length > 1) {
+            int groups = BTree.levelGroups(level.length, fanout, t);
+            int[] parents = new int[groups];
+            long[] parentMinKeys = new long[groups];
+            int child = 0;
+            for (int g = 0; g < groups; g++) {
+                int parent = newInner();
+                long[] parentKeys = inner.longs(parent);
+                int keyBase = inner.longOffset(parent);
+                int[] ints = inner.ints(parent);
+                int intBase = inner.intOffset(parent);
+                int size = BTree.groupSize(level.length, groups, g);
+                parentMinKeys[g] = minKeys[child];
+                for (int j = 0; j < size; j++) {
+                    ints[intBase + CHILDREN + j] = level[child];
+                    if (j > 0) {
+                        parentKeys[keyBase + j - 1] = minKeys[child];
+                    }
+                    child++;
+                }
+                ints[intBase + COUNT] = size - 1;
+                parents[g] = parent;
+            }
+            level = parents;
+            minKeys = parentMinKeys;
+            height++;
+        }
+        root = level[0];
+    }
+
+    /**
+     * Return the record IDs of all students with an ID in [lo, hi], following the leaf chain.
+     *
+     * @param lo The lowest student ID to include.
+     * @param hi The highest student ID to include.
+     * @return The record IDs in ascending order of student ID.
+     */
+    LongStream rangeSearch(long lo, long hi) {
+        if (root == NodeArena.NONE) {
+            return LongStream.empty();
+        }
+        int first = findLeaf(lo);
+        Spliterator.OfLong spliterator = new Spliterators.AbstractLongSpliterator(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE) {
+            private int leaf = first;
+            private int index = leafLowerBound(first, lo);
+
+            @Override
+            public boolean tryAdvance(LongConsumer action) {
+                while (leaf != NodeArena.NONE && index == count(leaf, 0)) {
+                    leaf = leaves.ints(leaf)[leaves.intOffset(leaf) + NEXT];
+                    index = 0;
+                }
+                if (leaf == NodeArena.NONE) {
+                    return false;
+                }
+                if (leafKey(leaf, index) > hi) {
+                    leaf = NodeArena.NONE;
+                    return false;
+                }
+                action.accept(leafValue(leaf, index++));
+                return true;
+            }
+        };
+        return StreamSupport.longStream(spliterator, false);
+    }
+
+    /**
+     * @return All record IDs in ascending order of student ID.
+     */
+    List<Long> print() {
+        List<Long> listOfRecordID = new ArrayList<>();
+        rangeSearch(Long.MIN_VALUE, Long.MAX_VALUE).forEach(listOfRecordID::add);
+        return listOfRecordID;
+    }
+
+    private boolean tryInsert(long studentId, long recordId) {
+        // Returns false, without inserting, if a leaf split would overfill the parent.
+        if (height > 1 && count(root, height - 1) == maxKeys) {
+            // If the root node is full, split it and create a new root
+            int newRoot = newInner();
+            inner.ints(newRoot)[inner.intOffset(newRoot) + CHILDREN] = root;
+            splitChild(newRoot, 0, false);
+            root = newRoot;
+            height++;
+        }
+
+        int parent = NodeArena.NONE;
+        int index = 0;
+        int node = root;
+        for (int level = height - 1; level > 0; level--) {
+            long[] keys = inner.longs(node);
+            int keyBase = inner.longOffset(node);
+            int[] ints = inner.ints(node);
+            int intBase = inner.intOffset(node);
+            int i = keySearch.upperBound(keys, keyBase, ints[intBase + COUNT], studentId);
+            if (level > 1 && count(ints[intBase + CHILDREN + i], level - 1) == maxKeys) {
+                // If the internal child node is full, split it before descending
+                splitChild(node, i, false);
+                if (studentId >= keys[keyBase + i]) {
+                    i++;
+                }
+            }
+            parent = node;
+            index = i;
+            node = ints[intBase + CHILDREN + i];
+        }
+
+        while (!insertIntoLeaf(node, studentId, recordId)) {
+            // The leaf has no room: split it and try the half that covers the studentId.
+            if (parent == NodeArena.NONE) {
+                parent = newInner();
+                inner.ints(parent)[inner.intOffset(parent) + CHILDREN] = node;
+                root = parent;
+                height++;
+            } else if (count(parent, 1) == maxKeys) {
+                return false;
+            }
+            splitChild(parent, index, true);
+            if (studentId >= inner.longs(parent)[inner.longOffset(parent) + index]) {
+                index++;
+            }
+            node = inner.ints(parent)[inner.intOffset(parent) + CHILDREN + index];
+        }
+        return true;
+    }
+
+    private boolean insertIntoLeaf(int leaf, long studentId, long recordId) {
+        // Insert the record directly after any equal keys, or return false if the leaf has no room.
+        long[] longs = leaves.longs(leaf);
+        int base = leaves.longOffset(leaf);
+        int[] ints = leaves.ints(leaf);
+        int intBase = leaves.intOffset(leaf);
+        int n = ints[intBase + COUNT];
+        if (n == leafCapacity) {
+            return false;
+        }
+        if (packed) {
+            int format = ints[intBase + FORMAT];
+            int i = PackedLeaf.upperBound(longs, base, format, n, studentId);
+            PackedLeaf.decode(longs, base, format, n, scratchKeys, scratchValues);
+            System.arraycopy(scratchKeys, i, scratchKeys, i + 1, n - i);
+            System.arraycopy(scratchValues, i, scratchValues, i + 1, n - i);
+            scratchKeys[i] = studentId;
+            scratchValues[i] = recordId;
+            if (PackedLeaf.words(n + 1, PackedLeaf.format(scratchKeys, scratchValues, 0, n + 1)) > 2 * maxKeys) {
+                return false;
+            }
+            ints[intBase + FORMAT] = PackedLeaf.encode(scratchKeys, scratchValues, 0, n + 1, longs, base);
+        } else {
+            int i = keySearch.upperBound(longs, base, n, studentId);
+            System.arraycopy(longs, base + i, longs, base + i + 1, n - i);
+            System.arraycopy(longs, base + maxKeys + i, longs, base + maxKeys + i + 1, n - i);
+            longs[base + i] = studentId;
+            longs[base + maxKeys + i] = recordId;
+        }
+        ints[intBase + COUNT] = n + 1;
+        return true;
+    }
+
+    private void removeFromLeaf(int leaf, int index) {
+        long[] longs = leaves.longs(leaf);
+        int base = leaves.longOffset(leaf);
+        int[] ints = leaves.ints(leaf);
+        int intBase = leaves.intOffset(leaf);
+        int n = ints[intBase + COUNT];
+        if (packed) {
+            // Fewer records never need more bits, so the rest always fits again.
+            PackedLeaf.decode(longs, base, ints[intBase + FORMAT], n, scratchKeys, scratchValues);
+            System.arraycopy(scratchKeys, index + 1, scratchKeys, index, n - index - 1);
+            System.arraycopy(scratchValues, index + 1, scratchValues, index, n - index - 1);
+            ints[intBase + FORMAT] = PackedLeaf.encode(scratchKeys, scratchValues, 0, n - 1, longs, base);
+        } else {
+            System.arraycopy(longs, base + index + 1, longs, base + index, n - index - 1);
+            System.arraycopy(longs, base + maxKeys + index + 1, longs, base + maxKeys + index, n - index - 1);
+        }
+        ints[intBase + COUNT] = n - 1;
+    }
+
+    private int leafLowerBound(int leaf, long studentId) {
+        long[] longs = leaves.longs(leaf);
+        int base = leaves.longOffset(leaf);
+        int[] ints = leaves.ints(leaf);
+        int intBase = leaves.intOffset(leaf);
+        return packed
+                ? PackedLeaf.lowerBound(longs, base, ints[intBase + FORMAT], ints[intBase + COUNT], studentId)
+                : keySearch.lowerBound(longs, base, ints[intBase + COUNT], studentId);
+    }
+
+    private long leafKey(int leaf, int index) {
+        long[] longs = leaves.longs(leaf);
+        int base = leaves.longOffset(leaf);
+        return packed
+                ? PackedLeaf.key(longs, base, leaves.ints(leaf)[leaves.intOffset(leaf) + FORMAT], index)
+                : longs[base + index];
+    }
+
+    private long leafValue(int leaf, int index) {
+        long[] longs = leaves.longs(leaf);
+        int base = leaves.longOffset(leaf);
+        if (packed) {
+            int[] ints = leaves.ints(leaf);
+            int intBase = leaves.intOffset(leaf);
+            return PackedLeaf.value(longs, base, ints[intBase + FORMAT], ints[intBase + COUNT], index);
+        }
+        return longs[base + maxKeys + index];
+    }
+
+    private int findLeaf(long studentId) {
+        // Descend from the root to the leaf that covers the studentId.
+        int node = root;
+        for (int level = height - 1; level > 0; level--) {
+            int[] ints = inner.ints(node);
+            int intBase = inner.intOffset(node);
+            int i = keySearch.upperBound(inner.longs(node), inner.longOffset(node), ints[intBase + COUNT], studentId);
+            node = ints[intBase + CHILDREN + i];
+        }
+        return node;
+    }
+
+    private int count(int node, int level) {
+        NodeArena arena = level == 0 ? leaves : inner;
+        return arena.ints(node)[arena.intOffset(node) + COUNT];
+    }
+
+    private int newLeaf() {
+        int leaf = leaves.allocate();
+        int[] ints = leaves.ints(leaf);
+        int intBase = leaves.intOffset(leaf);
+        ints[intBase + NEXT] = NodeArena.NONE;
+        ints[intBase + PREV] = NodeArena.NONE;
+        return leaf;
+    }
+
+    private int newInner() {
+        return inner.allocate();
+    }
+
+    private void link(int prev, int leaf) {
+        // Link a new leaf into the leaf chain right after prev, or at the front if prev is NONE.
+        int[] ints = leaves.ints(leaf);
+        int intBase = leaves.intOffset(leaf);
+        int next = prev == NodeArena.NONE ? NodeArena.NONE : leaves.ints(prev)[leaves.intOffset(prev) + NEXT];
+        ints[intBase + PREV] = prev;
+        ints[intBase + NEXT] = next;
+        if (prev != NodeArena.NONE) {
+            leaves.ints(prev)[leaves.intOffset(prev) + NEXT] = leaf;
+        }
+        if (next != NodeArena.NONE) {
+            leaves.ints(next)[leaves.intOffset(next) + PREV] = leaf;
+        }
+    }
+
+    private void splitChild(int parent, int childIndex, boolean leaf) {
+        long[] parentKeys = inner.longs(parent);
+        int parentKeyBase = inner.longOffset(parent);
+        int[] parentInts = inner.ints(parent);
+        int parentIntBase = inner.intOffset(parent);
+        int child = parentInts[parentIntBase + CHILDREN + childIndex];
+        int newChild;
+        long separator;
+
+        if (leaf) {
+            // The leaf keeps its first half of the records, the new leaf takes the rest and its first key
+            // is copied up. A full plain leaf keeps t-1 records and moves t.
+            newChild = newLeaf();
+            long[] from = leaves.longs(child);
+            int fromBase = leaves.longOffset(child);
+            long[] to = leaves.longs(newChild);
+            int toBase = leaves.longOffset(newChild);
+            int[] childInts = leaves.ints(child);
+            int childBase = leaves.intOffset(child);
+            int[] newInts = leaves.ints(newChild);
+            int newBase = leaves.intOffset(newChild);
+            int n = childInts[childBase + COUNT];
+            int keep = n / 2;
+            if (packed) {
+                PackedLeaf.decode(from, fromBase, childInts[childBase + FORMAT], n, scratchKeys, scratchValues);
+                childInts[childBase + FORMAT] = PackedLeaf.encode(scratchKeys, scratchValues, 0, keep, from, fromBase);
+                newInts[newBase + FORMAT] = PackedLeaf.encode(scratchKeys, scratchValues, keep, n - keep, to, toBase);
+                separator = scratchKeys[keep];
+            } else {
+                System.arraycopy(from, fromBase + keep, to, toBase, n - keep);
+                System.arraycopy(from, fromBase + maxKeys + keep, to, toBase + maxKeys, n - keep);
+                separator = to[toBase];
+            }
+            childInts[childBase + COUNT] = keep;
+            newInts[newBase + COUNT] = n - keep;
+            link(child, newChild);
+        } else {
+            // The middle key moves up and the keys and children after it move to the new node.
+            newChild = newInner();
+            long[] from = inner.longs(child);
+            int fromBase = inner.longOffset(child);
+            int[] childInts = inner.ints(child);
+            int childBase = inner.intOffset(child);
+            int[] newInts = inner.ints(newChild);
+            int newBase = inner.intOffset(newChild);
+            System.arraycopy(from, fromBase + t, inner.longs(newChild), inner.longOffset(newChild), t - 1);
+            System.arraycopy(childInts, childBase + CHILDREN + t, newInts, newBase + CHILDREN, t);
+            separator = from[fromBase + t - 1];
+            newInts[newBase + COUNT] = t - 1;
+            childInts[childBase + COUNT] = t - 1;
+        }
+
+        // Shift keys and children in the parent to make room for the new child behind the separator.
+        int n = parentInts[parentIntBase + COUNT];
+        System.arraycopy(parentKeys, parentKeyBase + childIndex, parentKeys, parentKeyBase + childIndex + 1, n - childIndex);
+        System.arraycopy(parentInts, parentIntBase + CHILDREN + childIndex + 1,
+                parentInts, parentIntBase + CHILDREN + childIndex + 2, n - childIndex);
+        parentKeys[parentKeyBase + childIndex] = separator;
+        parentInts[parentIntBase + CHILDREN + childIndex + 1] = newChild;
+        parentInts[parentIntBase + COUNT] = n + 1;
+    }
+
+    private void removeLeaf(int leaf) {
+        // The leaf is empty: unlink it, then drop it from its parent, using the path of the delete.
+        int[] ints = leaves.ints(leaf);
+        int intBase = leaves.intOffset(leaf);
+        int next = ints[intBase + NEXT];
+        int prev = ints[intBase + PREV];
+        if (prev != NodeArena.NONE) {
+            leaves.ints(prev)[leaves.intOffset(prev) + NEXT] = next;
+        }
+        if (next != NodeArena.NONE) {
+            leaves.ints(next)[leaves.intOffset(next) + PREV] = prev;
+        }
+        leaves.free(leaf);
+
+        for (int level = 1; level < height; level++) {
+            int parent = path[level];
+            int index = slots[level];
+            int[] parentInts = inner.ints(parent);
+            int parentIntBase = inner.intOffset(parent);
+            int n = parentInts[parentIntBase + COUNT];
+            if (n > 0) {
+                // Remove the child with the separator in front of it; the first child takes the one after it.
+                long[] keys = inner.longs(parent);
+                int keyBase = inner.longOffset(parent);
+                int key = Math.max(0, index - 1);
+                System.arraycopy(keys, keyBase + key + 1, keys, keyBase + key, n - 1 - key);
+                System.arraycopy(parentInts, parentIntBase + CHILDREN + index + 1,
+                        parentInts, parentIntBase + CHILDREN + index, n - index);
+                parentInts[parentIntBase + COUNT] = n - 1;
+                break;
+            }
+            // The parent has lost its only child.
+            inner.free(parent);
+        }
+        if (leaves.size() == 0) {
+            root = NodeArena.NONE;
+            height = 0;
+            return;
+        }
+
+        // A root with a single child is replaced by that child.
+        while (height > 1 && count(root, height - 1) == 0) {
+            int oldRoot = root;
+            root = inner.ints(oldRoot)[inner.intOffset(oldRoot) + CHILDREN];
+            inner.free(oldRoot);
+            height--;
+        }
+    }
+}
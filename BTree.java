@@ -1,26 +1,468 @@
 import java.io.*;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
 
 /**
  * B+Tree Structure
  * Key - StudentId
  * Leaf Node should contain [key, recordId]
+ * Internal nodes only hold separator keys; the leaves are linked in key order.
+ * The nodes live on the heap, or in the pages of an index file when the tree is opened with
+ * {@link #create(Path, int)} or {@link #open(Path)}.
  */
-class BTree {
+class BTree implements Closeable {
+
+    /**
+     * Fraction of each node filled by {@link #bulkLoad(List)} when no fill factor is given.
+     */
+    static final double DEFAULT_FILL_FACTOR = 0.9;
+    /**
+     * Fraction of a full node kept on the left when an insert past the largest key splits it. Sequential
+     * inserts never come back to the left node, so an even split would leave it half empty for good. The
+     * new right node starts below the minimum of t - 1 keys: the last leaf takes the next appends in place,
+     * and a delete that reaches the node first borrows into it or merges it like any underfull node.
+     */
+    static final double APPEND_SPLIT_RATIO = 0.9;
+    /**
+     * A filter is sized for twice the student IDs in the tree, and never for fewer than this many.
+     */
+    private static final long MIN_FILTER_CAPACITY = 1024;
+    /**
+     * Deletes also take a step of {@link #defragStep()} while the leaves are filled below this fraction.
+     * Borrowing and merging alone only keep every leaf at least half full.
+     */
+    static final double DEFRAG_THRESHOLD = 0.6;
+    /**
+     * Deepest tree whose levels are counted; 64 levels of even a degree-2 tree exceed any key space.
+     */
+    private static final int MAX_LEVELS = 64;
 
     /**
      * Pointer to the root node.
      */
     private BTreeNode root;
+    /**
+     * The rightmost leaf, or null. Inserts past its last key are appended to it without a descent while
+     * it has room, belongs to the current epoch and is still the end of the leaf chain.
+     */
+    private BTreeNode lastLeaf;
     /**
      * Number of key-value pairs allowed in the tree/the minimum degree of B+Tree
      **/
     private int t;
+    /**
+     * Strategy used to find a key inside a node.
+     */
+    private final KeySearch keySearch;
+    /**
+     * On-disk nodes when the tree is backed by an index file, otherwise null.
+     */
+    private PagedBTree paged;
+    /**
+     * Log that inserts and deletes are written to, or null.
+     */
+    private WriteAheadLog log;
+    /**
+     * Student data file that deletes are recorded in, or null.
+     */
+    private StudentDataFile dataFile;
+    /**
+     * Binary record file that holds the full rows, or null. When set, recordIds are its slots.
+     */
+    private RecordHeap heap;
+    /**
+     * Current snapshot epoch. Nodes created in an older epoch are copied on write.
+     */
+    private long epoch;
+    /**
+     * Number of levels of the in-memory tree, 0 when it is empty.
+     */
+    private int height;
+    /**
+     * Number of nodes on each level of the in-memory tree, leaves first, and of records in its leaves.
+     * Kept up to date by every split, merge and change of height.
+     */
+    private final long[] levelNodes = new long[MAX_LEVELS];
+    private long records;
+    /**
+     * Nodes and child slots from the root down to the node being rebalanced or defragmented.
+     */
+    private BTreeNode[] pathNodes = new BTreeNode[0];
+    private int[] pathSlots = new int[0];
+    /**
+     * Position of the defragmentation sweep: the level of the next node to have its children packed, and
+     * a key that node covers.
+     */
+    private int defragLevel = 1;
+    private long defragKey = Long.MIN_VALUE;
+    /**
+     * Metrics that operations and structural changes are reported to, or null.
+     */
+    private BTreeMetrics metrics;
+    /**
+     * Secondary indexes kept in sync with inserts and deletes, or null.
+     */
+    private SecondaryIndexes indexes;
+    /**
+     * Filter over the student IDs in the tree, checked before a search or delete descends, or null.
+     */
+    private BloomFilter filter;
+    /**
+     * Cache of full rows in front of the record file, or null.
+     */
+    private StudentCache cache;
 
     BTree(int t) {
+        this(t, KeySearch.forDegree(t));
+    }
+
+    BTree(int t, KeySearch keySearch) {
         this.root = null;
         this.t = t;
+        this.keySearch = keySearch;
+    }
+
+    private BTree(PagedBTree paged) {
+        this(paged.degree());
+        this.paged = paged;
+    }
+
+    /**
+     * Create an empty B+Tree stored in a new index file, replacing any file at that path.
+     *
+     * @param indexFile The index file.
+     * @param pageSize  Size of each node in bytes, e.g. 4096, 8192 or 16384. It determines the degree.
+     * @return The new B+Tree.
+     * @throws IOException If the file cannot be created.
+     */
+    static BTree create(Path indexFile, int pageSize) throws IOException {
+        return new BTree(new PagedBTree(PageFile.create(indexFile, pageSize)));
+    }
+
+    /**
+     * Open the B+Tree stored in an existing index file. Only the file header is read up front; nodes are
+     * paged in by the operating system as the tree is used.
+     *
+     * @param indexFile The index file.
+     * @return The B+Tree.
+     * @throws IOException If the file cannot be opened or is not an index file.
+     */
+    static BTree open(Path indexFile) throws IOException {
+        return new BTree(new PagedBTree(PageFile.open(indexFile)));
+    }
+
+    /**
+     * Create an empty B+Tree stored in a new index file, with a bounded buffer pool in front of it.
+     *
+     * @param indexFile   The index file.
+     * @param pageSize    Size of each node in bytes, e.g. 4096, 8192 or 16384. It determines the degree.
+     * @param bufferPages Number of pages the buffer pool keeps in memory.
+     * @param policy      How the buffer pool picks pages to evict.
+     * @return The new B+Tree.
+     * @throws IOException If the file cannot be created.
+     */
+    static BTree create(Path indexFile, int pageSize, int bufferPages, EvictionPolicy policy) throws IOException {
+        PageFile file = PageFile.create(indexFile, pageSize);
+        return new BTree(new PagedBTree(file, new BufferPool(file, bufferPages, policy)));
+    }
+
+    /**
+     * Open the B+Tree stored in an existing index file, with a bounded buffer pool in front of it.
+     *
+     * @param indexFile   The index file.
+     * @param bufferPages Number of pages the buffer pool keeps in memory.
+     * @param policy      How the buffer pool picks pages to evict.
+     * @return The B+Tree.
+     * @throws IOException If the file cannot be opened or is not an index file.
+     */
+    static BTree open(Path indexFile, int bufferPages, EvictionPolicy policy) throws IOException {
+        PageFile file = PageFile.open(indexFile);
+        return new BTree(new PagedBTree(file, new BufferPool(file, bufferPages, policy)));
+    }
+
+    /**
+     * @return The buffer pool of an index file opened with one, for its hit, miss and eviction counters;
+     * otherwise null.
+     */
+    BufferPool bufferPool() {
+        return paged != null ? paged.bufferPool() : null;
+    }
+
+    /**
+     * Replay a write-ahead log into the tree, then log every later insert and delete to it.
+     * Replay is idempotent: inserts of students that are already in the tree, e.g. because they were
+     * flushed to an index file before a crash, are skipped.
+     *
+     * @param log The log to replay and append to.
+     * @return The number of records replayed.
+     * @throws IOException If the log cannot be read.
+     */
+    int recover(WriteAheadLog log) throws IOException {
+        int records = log.replay(student -> {
+            if (lookup(student.studentId) == -1) {
+                insertIntoIndex(student);
+            }
+        }, this::deleteFromIndex);
+        this.log = log;
+        return records;
+    }
+
+    /**
+     * Record every later delete as a tombstone in the given student data file.
+     *
+     * @param dataFile The data file the tree was loaded from.
+     */
+    void attach(StudentDataFile dataFile) {
+        this.dataFile = dataFile;
+    }
+
+    /**
+     * Store the full row of every later insert in the given record file and use its slot as the recordId.
+     * The tree must already map student IDs to recordIds of that file, e.g. by bulk loading its rows.
+     *
+     * @param heap The record file.
+     */
+    void attach(RecordHeap heap) {
+        this.heap = heap;
+    }
+
+    /**
+     * Report every later search, insert and delete and every structural change to the given metrics.
+     * The metrics are first seeded with the current shape of the tree, which takes one pass over it.
+     *
+     * @param metrics The metrics.
+     */
+    void attach(BTreeMetrics metrics) {
+        this.metrics = metrics;
+        if (paged != null) {
+            paged.attach(metrics);
+        }
+        measure();
+    }
+
+    /**
+     * Keep the given secondary indexes in sync with every later insert, delete and bulk load, and answer
+     * {@link #find} from them. The indexes must already hold the rows of the tree, e.g. those of the
+     * attached record file.
+     *
+     * @param indexes The secondary indexes.
+     */
+    void attach(SecondaryIndexes indexes) {
+        this.indexes = indexes;
+    }
+
+    /**
+     * Serve {@link #getStudent} from the given row cache and fill it on a miss. Every later insert and
+     * delete drops the row of its student, and a bulk load empties the cache.
+     *
+     * @param cache The row cache.
+     */
+    void attach(StudentCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Keep a Bloom filter over the student IDs and check it before every search and delete, so that most
+     * IDs that are not in the tree are rejected without a descent. The filter is built from the current
+     * contents, kept up to date by later inserts, and rebuilt by a bulk load or once inserts outgrow it or
+     * deletes leave too many stale bits behind.
+     *
+     * @param falsePositiveRate Fraction of absent IDs that may still pay for a descent, in (0, 1).
+     */
+    void enableFilter(double falsePositiveRate) {
+        long[] keys = {0};
+        forEachKey(key -> keys[0]++);
+        BloomFilter rebuilt = new BloomFilter(Math.max(2 * keys[0], MIN_FILTER_CAPACITY), falsePositiveRate);
+        forEachKey(rebuilt::add);
+        filter = rebuilt;
+    }
+
+    private void forEachKey(LongConsumer action) {
+        if (paged != null) {
+            paged.forEachKey(action);
+            return;
+        }
+        for (BTreeCursor cursor = cursor(Long.MIN_VALUE); cursor.valid(); cursor.next()) {
+            action.accept(cursor.key());
+        }
+    }
+
+    private boolean filtered(long studentId) {
+        // True if the filter rules the student out, so no descent is needed.
+        return filter != null && !filter.mightContain(studentId);
+    }
+
+    private void filterInserted(long studentId) {
+        if (filter != null) {
+            filter.add(studentId);
+            if (filter.saturated()) {
+                enableFilter(filter.falsePositiveRate());
+            }
+        }
+    }
+
+    private void filterDeleted() {
+        if (filter != null) {
+            filter.deleted();
+            if (filter.saturated()) {
+                enableFilter(filter.falsePositiveRate());
+            }
+        }
+    }
+
+    private void measure() {
+        // The in-memory tree counts its nodes as it changes; an index file is walked.
+        if (paged != null) {
+            metrics.reset(2 * t - 1, paged.levelNodes(), rangeSearch(Long.MIN_VALUE, Long.MAX_VALUE).count());
+        } else {
+            metrics.reset(2 * t - 1, Arrays.copyOf(levelNodes, height), records);
+        }
+    }
+
+    /**
+     * Fill factor of every level: the keys it holds over the keys its nodes have room for. Leaves hold the
+     * records; an internal node holds one separator fewer than it has children.
+     *
+     * @return The fill factor of each level, leaves first; its length is the height.
+     */
+    double[] occupancy() {
+        long[] nodes = paged != null ? paged.levelNodes() : Arrays.copyOf(levelNodes, height);
+        long recordCount = paged != null ? rangeSearch(Long.MIN_VALUE, Long.MAX_VALUE).count() : records;
+        double[] fill = new double[nodes.length];
+        for (int level = 0; level < nodes.length; level++) {
+            long keys = level == 0 ? recordCount : nodes[level - 1] - nodes[level];
+            fill[level] = nodes[level] == 0 ? 0 : (double) keys / (nodes[level] * (2 * t - 1));
+        }
+        return fill;
+    }
+
+    private void split(int level) {
+        // Structural changes of the in-memory tree update its level counts and are reported to the metrics.
+        levelNodes[level]++;
+        if (metrics != null) {
+            metrics.split(level);
+        }
+    }
+
+    private void merged(int level) {
+        levelNodes[level]--;
+        if (metrics != null) {
+            metrics.merged(level);
+        }
+    }
+
+    private void grew() {
+        levelNodes[height++] = 1;
+        if (metrics != null) {
+            metrics.grew();
+        }
+    }
+
+    private void shrank() {
+        levelNodes[--height] = 0;
+        if (metrics != null) {
+            metrics.shrank();
+        }
+    }
+
+    private void records(long delta) {
+        records += delta;
+        if (metrics != null) {
+            metrics.records(delta);
+        }
+    }
+
+    private int height() {
+        // Every search, insert and delete reads exactly one node per level.
+        return paged != null ? paged.height() : height;
+    }
+
+    /**
+     * Fetch the full row of a student: one index probe plus one positional read in the record file,
+     * unless the attached row cache holds it.
+     *
+     * @param studentId The student ID to look up.
+     * @return The student, or null if the student is not found or no record file is attached.
+     */
+    Student getStudent(long studentId) {
+        if (cache != null) {
+            Student cached = cache.get(studentId);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        long recordId = lookup(studentId);
+        if (recordId == -1 || heap == null) {
+            return null;
+        }
+        try {
+            Student student = heap.read(recordId);
+            if (cache != null) {
+                cache.put(student);
+            }
+            return student;
+        } catch (IOException e) {
+            System.out.println("Error reading the record file: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Find the students that meet all of the given conditions, using the attached secondary indexes.
+     *
+     * @param major  The major to match, or null for any major.
+     * @param level  The level to match, or null for any level.
+     * @param minAge The lowest age to include.
+     * @param maxAge The highest age to include.
+     * @return The students in ascending order of student ID; empty if no indexes or no record file are
+     * attached.
+     */
+    List<Student> find(String major, String level, int minAge, int maxAge) {
+        List<Student> students = new ArrayList<>();
+        if (indexes == null) {
+            return students;
+        }
+        for (long studentId : indexes.find(major, level, minAge, maxAge)) {
+            Student student = getStudent(studentId);
+            if (student != null) {
+                students.add(student);
+            }
+        }
+        return students;
+    }
+
+    /**
+     * Flush and close the index file, the attached student files and the write-ahead log. Once the index
+     * file, or in memory the record heap, is forced to disk it holds every logged change, so the log is
+     * emptied as a checkpoint before it is closed; otherwise it is kept for the next {@link #recover}.
+     *
+     * @throws IOException If the index file, the student files or the log cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        if (paged != null) {
+            paged.close();
+        }
+        if (dataFile != null) {
+            dataFile.close();
+        }
+        if (heap != null) {
+            heap.close();
+        }
+        if (log != null) {
+            if (paged != null || heap != null) {
+                log.truncate();
+            }
+            log.close();
+        }
     }
 
     /**
@@ -30,145 +472,662 @@ class BTree {
      * @return The record ID associated with the student, or -1 if the student is not found.
      */
     long search(long studentId) {
+        if (metrics == null) {
+            return lookup(studentId);
+        }
+        long start = System.nanoTime();
+        boolean filtered = filtered(studentId);
+        long recordId = filtered ? -1 : lookup(studentId);
+        metrics.searched(1, recordId == -1 ? 1 : 0, filtered ? 0 : height(), System.nanoTime() - start);
+        return recordId;
+    }
+
+    private long lookup(long studentId) {
+        if (filtered(studentId)) {
+            return -1;
+        }
+        if (paged != null) {
+            return paged.search(studentId);
+        }
         return searchHelper(root, studentId);
     }
 
     private long searchHelper(BTreeNode node, long studentId) {
         if (node == null) {
-            System.out.println("Student with ID " + studentId + " not found.");
             return -1;
         }
 
-        int i = 0;
-        while (i < node.n && studentId > node.keys[i]) {
-            i++;
+        if (!node.leaf) {
+            // Internal nodes only route the search; the record always lives in a leaf.
+            return searchHelper(node.children[findChildIndex(node, studentId)], studentId);
         }
 
+        int i = findKeyIndex(node, studentId);
         if (i < node.n && studentId == node.keys[i]) {
             return node.values[i];
-        } else if (node.leaf) {
-            System.out.println("Student with ID " + studentId + " not found.");
+        } else {
             return -1;
+        }
+    }
+
+    /**
+     * Open a cursor on the first student whose ID is greater than or equal to the given one.
+     * The cursor descends the tree once and then only follows the leaf links.
+     *
+     * @param studentId The student ID to start from.
+     * @return A cursor positioned at that student, or past the end if there is none.
+     */
+    BTreeCursor cursor(long studentId) {
+        if (paged != null) {
+            throw new UnsupportedOperationException("Cursors are only available on in-memory trees");
+        }
+        if (root == null) {
+            return new BTreeCursor(null, 0);
+        }
+        BTreeNode node = root;
+        while (!node.leaf) {
+            node = node.children[findChildIndex(node, studentId)];
+        }
+        return new BTreeCursor(node, findKeyIndex(node, studentId));
+    }
+
+    /**
+     * Return the record IDs of all students with an ID in [lo, hi], in ascending order of student ID.
+     *
+     * @param lo The lowest student ID to include.
+     * @param hi The highest student ID to include.
+     * @return The record IDs, streamed straight from the leaves.
+     */
+    LongStream rangeSearch(long lo, long hi) {
+        if (paged != null) {
+            return paged.rangeSearch(lo, hi);
+        }
+        BTreeCursor cursor = cursor(lo);
+        Spliterator.OfLong spliterator = new Spliterators.AbstractLongSpliterator(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE) {
+            @Override
+            public boolean tryAdvance(LongConsumer action) {
+                if (!cursor.valid() || cursor.key() > hi) {
+                    return false;
+                }
+                action.accept(cursor.value());
+                cursor.next();
+                return true;
+            }
+        };
+        return StreamSupport.longStream(spliterator, false);
+    }
+
+    /**
+     * Search for many student records at once. The IDs are visited in sorted order and share the descent
+     * from the root, so IDs that fall into the same leaf cost a single leaf visit.
+     *
+     * @param studentIds The student IDs to search for, in any order.
+     * @return The record ID of each student, in the order of the given IDs, or -1 where a student is not found.
+     */
+    long[] searchBatch(long[] studentIds) {
+        long start = System.nanoTime();
+        long[] sorted = sortedCopy(studentIds);
+        long[] found = new long[sorted.length];
+        long visits = 0;
+        if (paged != null || root == null) {
+            for (int i = 0; i < sorted.length; i++) {
+                found[i] = i > 0 && sorted[i] == sorted[i - 1] ? found[i - 1] : lookup(sorted[i]);
+            }
+            visits = (long) sorted.length * height();
         } else {
-            return searchHelper(node.children[i], studentId);
+            BatchPath path = new BatchPath(false);
+            for (int i = 0; i < sorted.length; i++) {
+                if (filtered(sorted[i])) {
+                    found[i] = -1;
+                    continue;
+                }
+                BTreeNode leaf = path.leaf(sorted[i]);
+                int index = findKeyIndex(leaf, sorted[i]);
+                found[i] = index < leaf.n && leaf.keys[index] == sorted[i] ? leaf.values[index] : -1;
+            }
+            visits = path.visits;
+        }
+
+        long[] recordIds = new long[studentIds.length];
+        int misses = 0;
+        for (int i = 0; i < studentIds.length; i++) {
+            recordIds[i] = found[firstIndex(sorted, studentIds[i])];
+            if (recordIds[i] == -1) {
+                misses++;
+            }
+        }
+        if (metrics != null && studentIds.length > 0) {
+            metrics.searched(studentIds.length, misses, visits, System.nanoTime() - start);
+        }
+        return recordIds;
+    }
+
+    /**
+     * Take a consistent point-in-time view of the tree. The snapshot shares every node with the tree;
+     * later inserts and deletes copy the nodes on their path instead of changing them, so the snapshot
+     * can be read from other threads without any lock while the tree keeps changing. Nodes that only a
+     * snapshot still references are reclaimed by the garbage collector once it is dropped.
+     *
+     * @return The snapshot.
+     */
+    BTreeSnapshot snapshot() {
+        if (paged != null) {
+            throw new UnsupportedOperationException("Snapshots are only available on in-memory trees");
+        }
+        if (root != null && root.epoch == epoch) {
+            // Every write copies the root, so an older root means the previous snapshot is still current.
+            epoch++;
+        }
+        return new BTreeSnapshot(root, keySearch);
+    }
+
+    private BTreeNode newNode(boolean leaf) {
+        BTreeNode node = new BTreeNode(t, leaf);
+        node.epoch = epoch;
+        return node;
+    }
+
+    private BTreeNode writable(BTreeNode node) {
+        // Return the node itself if it was created since the last snapshot, otherwise a private copy.
+        // Callers store the result in the parent, which was made writable first.
+        if (node.epoch == epoch) {
+            return node;
+        }
+        BTreeNode copy = newNode(node.leaf);
+        System.arraycopy(node.keys, 0, copy.keys, 0, node.n);
+        if (node.leaf) {
+            System.arraycopy(node.values, 0, copy.values, 0, node.n);
+            // Snapshots never follow the leaf links, so the neighbours can be relinked in place.
+            copy.next = node.next;
+            copy.prev = node.prev;
+            if (copy.next != null) {
+                copy.next.prev = copy;
+            }
+            if (copy.prev != null) {
+                copy.prev.next = copy;
+            }
+        } else {
+            System.arraycopy(node.children, 0, copy.children, 0, node.n + 1);
+        }
+        copy.n = node.n;
+        return copy;
+    }
+
+    /**
+     * Insert a new student record into the B+Tree. A student ID past the largest one is appended to the
+     * last leaf without a descent while that leaf has room.
+     *
+     * @param student The student record to insert. With a record file attached, its recordId is replaced
+     *                by the slot the row is stored in.
+     * @return True if the student was stored, False if the record file refused the row.
+     * @throws UncheckedIOException If the index file cannot grow. The row is freed in the record file again.
+     */
+    boolean insert(Student student) {
+        long start = metrics != null ? System.nanoTime() : 0;
+        if (heap != null) {
+            try {
+                student.recordId = heap.append(student);
+            } catch (IOException e) {
+                System.out.println("Error writing to the record file: " + e.getMessage());
+                return false;
+            }
+        }
+        boolean append = appendable(student.studentId);
+        try {
+            insertIntoIndex(student);
+        } catch (RuntimeException e) {
+            // Free the slot again, or the next load from the record file would bring back the row
+            if (heap != null) {
+                try {
+                    heap.delete(student.recordId);
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
+        if (indexes != null) {
+            indexes.add(student);
+        }
+        if (cache != null) {
+            cache.invalidate(student.studentId);
+        }
+        if (log != null) {
+            try {
+                log.logInsert(student);
+            } catch (IOException e) {
+                System.out.println("Error writing to the write-ahead log: " + e.getMessage());
+            }
+        }
+        if (metrics != null) {
+            metrics.inserted(1, append ? 1 : height(), System.nanoTime() - start);
         }
+        return true;
     }
 
     /**
-     * Insert a new student record into the B+Tree.
+     * Insert many student records at once. The records are inserted in studentId order and share the
+     * descent from the root; records that fall into the same leaf are added in a single leaf visit, and
+     * only a full leaf sends a record down the regular insert path to be split.
      *
-     * @param student The student record to insert.
+     * @param students The student records to insert. With a record file attached, their recordIds are
+     *                 replaced by the slots the rows are stored in.
      * @return The updated B+Tree.
      */
-    BTree insert(Student student) {
-        if (root == null) {
+    BTree insertAll(List<Student> students) {
+        long start = System.nanoTime();
+        List<Student> rows = inStudentIdOrder(students);
+        if (heap != null) {
+            try {
+                heap.appendAll(rows);
+            } catch (IOException e) {
+                System.out.println("Error writing to the record file: " + e.getMessage());
+                return this;
+            }
+        }
+
+        BatchPath path = paged == null && root != null ? new BatchPath(true) : null;
+        long visits = 0;
+        int added = 0;
+        for (Student student : rows) {
+            BTreeNode leaf = path != null ? path.leaf(student.studentId) : null;
+            if (leaf != null && leaf.n < 2 * t - 1) {
+                int i = findChildIndex(leaf, student.studentId);
+                System.arraycopy(leaf.keys, i, leaf.keys, i + 1, leaf.n - i);
+                System.arraycopy(leaf.values, i, leaf.values, i + 1, leaf.n - i);
+                leaf.keys[i] = student.studentId;
+                leaf.values[i] = student.recordId;
+                leaf.n++;
+                added++;
+                filterInserted(student.studentId);
+            } else {
+                // The leaf is full or there is no shared path: the regular insert splits and may grow the
+                // tree, so the path is rebuilt from the new root afterwards.
+                if (path != null) {
+                    visits += path.visits;
+                }
+                insertIntoIndex(student);
+                visits += height();
+                if (paged == null) {
+                    path = new BatchPath(true);
+                }
+            }
+        }
+        if (path != null) {
+            visits += path.visits;
+        }
+        if (indexes != null) {
+            rows.forEach(indexes::add);
+        }
+        if (cache != null) {
+            rows.forEach(student -> cache.invalidate(student.studentId));
+        }
+
+        if (log != null) {
+            try {
+                for (Student student : rows) {
+                    log.logInsert(student);
+                }
+            } catch (IOException e) {
+                System.out.println("Error writing to the write-ahead log: " + e.getMessage());
+            }
+        }
+        records(added);
+        if (metrics != null && !rows.isEmpty()) {
+            metrics.inserted(rows.size(), visits, System.nanoTime() - start);
+        }
+        return this;
+    }
+
+    private void insertIntoIndex(Student student) {
+        if (paged != null) {
+            try {
+                paged.insert(student.studentId, student.recordId);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error growing the index file", e);
+            }
+        } else if (root == null) {
             // If the tree is empty, create a new root node
-            root = new BTreeNode(t, true);
+            root = newNode(true);
             root.keys[0] = student.studentId;
             root.values[0] = student.recordId;
             root.n = 1;
+            lastLeaf = root;
+            grew();
+        } else if (appendable(student.studentId)) {
+            // Past the largest key with room in the last leaf: no separator changes, so append in place
+            lastLeaf.keys[lastLeaf.n] = student.studentId;
+            lastLeaf.values[lastLeaf.n] = student.recordId;
+            lastLeaf.n++;
         } else {
+            root = writable(root);
             if (root.n == 2 * t - 1) {
                 // If the root node is full, split it and create a new root
-                BTreeNode newRoot = new BTreeNode(t, false);
+                BTreeNode newRoot = newNode(false);
                 newRoot.children[0] = root;
-                splitChild(newRoot, 0);
+                splitChild(newRoot, 0, student.studentId >= root.keys[root.n - 1]);
+                split(height - 1);
+                grew();
                 int i = 0;
-                if (newRoot.keys[0] < student.studentId) {
+                if (newRoot.keys[0] <= student.studentId) {
                     i++;
                 }
-                insertNonFull(newRoot.children[i], student);
+                insertNonFull(newRoot.children[i], student, height - 2, i == 1);
                 root = newRoot;
             } else {
-                insertNonFull(root, student);
+                insertNonFull(root, student, height - 1, true);
+            }
+        }
+        records(1);
+        filterInserted(student.studentId);
+    }
+
+    /**
+     * Build the B+Tree bottom-up from the given student records, replacing any existing contents.
+     * Uses {@link #DEFAULT_FILL_FACTOR}.
+     *
+     * @param students The student records to load.
+     * @return The updated B+Tree.
+     */
+    BTree bulkLoad(List<Student> students) {
+        return bulkLoad(students, DEFAULT_FILL_FACTOR);
+    }
+
+    /**
+     * Build the B+Tree bottom-up from the given student records, replacing any existing contents.
+     * The rows are sorted by studentId unless they already arrive in order. Unlike {@link #insert},
+     * the rows are not written to the write-ahead log.
+     *
+     * @param students   The student records to load.
+     * @param fillFactor Fraction of each node to fill, in (0, 1]. Nodes never drop below the minimum degree.
+     * @return The updated B+Tree.
+     */
+    BTree bulkLoad(List<Student> students, double fillFactor) {
+        if (fillFactor <= 0 || fillFactor > 1) {
+            throw new IllegalArgumentException("Fill factor must be in (0, 1]: " + fillFactor);
+        }
+
+        List<Student> rows = inStudentIdOrder(students);
+        int count = rows.size();
+        long[] keys = new long[count];
+        long[] values = new long[count];
+        for (int i = 0; i < count; i++) {
+            Student s = rows.get(i);
+            keys[i] = s.studentId;
+            values[i] = s.recordId;
+        }
+        if (indexes != null) {
+            indexes.clear();
+            rows.forEach(indexes::add);
+        }
+        if (cache != null) {
+            cache.clear();
+        }
+        return load(keys, values, fillFactor);
+    }
+
+    /**
+     * Build the B+Tree bottom-up from sorted student IDs and their record IDs, replacing any existing
+     * contents. Used where only the index entries are at hand, e.g. when the entries of several trees
+     * are redistributed; the full rows that secondary indexes need are not, so none may be attached.
+     *
+     * @param studentIds The student IDs, in ascending order.
+     * @param recordIds  The record IDs, in the same order.
+     * @param fillFactor Fraction of each node to fill, in (0, 1].
+     * @return The updated B+Tree.
+     */
+    BTree bulkLoad(long[] studentIds, long[] recordIds, double fillFactor) {
+        if (fillFactor <= 0 || fillFactor > 1) {
+            throw new IllegalArgumentException("Fill factor must be in (0, 1]: " + fillFactor);
+        }
+        if (indexes != null) {
+            throw new IllegalStateException("Secondary indexes are attached; bulk load the full rows instead");
+        }
+        return load(studentIds, recordIds, fillFactor);
+    }
+
+    private BTree load(long[] keys, long[] values, double fillFactor) {
+        int count = keys.length;
+        defragLevel = 1;
+        defragKey = Long.MIN_VALUE;
+        if (filter != null) {
+            filter = new BloomFilter(Math.max(2L * count, MIN_FILTER_CAPACITY), filter.falsePositiveRate());
+            for (long key : keys) {
+                filter.add(key);
+            }
+        }
+
+        if (paged != null) {
+            try {
+                paged.bulkLoad(keys, values, fillFactor);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error growing the index file", e);
+            }
+            if (metrics != null) {
+                measure();
+            }
+            return this;
+        }
+        Arrays.fill(levelNodes, 0);
+        records = count;
+        if (count == 0) {
+            root = null;
+            lastLeaf = null;
+            height = 0;
+            if (metrics != null) {
+                measure();
+            }
+            return this;
+        }
+
+        // Leaf level: pack the sorted keys into linked leaves.
+        int groups = levelGroups(count, leafKeys(fillFactor), t - 1);
+        BTreeNode[] level = new BTreeNode[groups];
+        long[] minKeys = new long[groups];
+        int pos = 0;
+        for (int g = 0; g < groups; g++) {
+            BTreeNode leaf = newNode(true);
+            leaf.n = groupSize(count, groups, g);
+            System.arraycopy(keys, pos, leaf.keys, 0, leaf.n);
+            System.arraycopy(values, pos, leaf.values, 0, leaf.n);
+            pos += leaf.n;
+            if (g > 0) {
+                level[g - 1].next = leaf;
+                leaf.prev = level[g - 1];
             }
+            level[g] = leaf;
+            minKeys[g] = leaf.keys[0];
+        }
+        lastLeaf = level[groups - 1];
+        levelNodes[0] = groups;
+        height = 1;
+
+        // Internal levels: group the nodes below under new parents until a single root remains.
+        // The separator in front of each child is the smallest key in that child's subtree.
+        int fanout = fanout(fillFactor);
+        while (level.length > 1) {
+            groups = levelGroups(level.length, fanout, t);
+            BTreeNode[] parents = new BTreeNode[groups];
+            long[] parentMinKeys = new long[groups];
+            int child = 0;
+            for (int g = 0; g < groups; g++) {
+                BTreeNode parent = newNode(false);
+                int size = groupSize(level.length, groups, g);
+                parentMinKeys[g] = minKeys[child];
+                for (int j = 0; j < size; j++) {
+                    parent.children[j] = level[child];
+                    if (j > 0) {
+                        parent.keys[j - 1] = minKeys[child];
+                    }
+                    child++;
+                }
+                parent.n = size - 1;
+                parents[g] = parent;
+            }
+            level = parents;
+            minKeys = parentMinKeys;
+            levelNodes[height++] = groups;
+        }
+
+        root = level[0];
+        if (metrics != null) {
+            measure();
         }
-        writeToCSV(student); // Insert into student.csv
         return this;
     }
 
-    private void writeToCSV(Student student) {
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter("src/Student.csv", true))) {
-            String studentInfo = student.studentId + "," +
-                    student.studentName + "," +
-                    student.major + "," +
-                    student.level + "," +
-                    student.age + "," +
-                    student.recordId;
-            bw.write(studentInfo);
-            bw.newLine();
-        } catch (IOException e) {
-            System.out.println("Error writing to student.csv: " + e.getMessage());
+    private static List<Student> inStudentIdOrder(List<Student> students) {
+        // Only pay for the sort when the rows are not already in studentId order.
+        for (int i = 1; i < students.size(); i++) {
+            if (students.get(i).studentId < students.get(i - 1).studentId) {
+                List<Student> rows = new ArrayList<>(students);
+                rows.sort(Comparator.comparingLong(s -> s.studentId));
+                return rows;
+            }
         }
+        return students;
     }
 
-    private void insertNonFull(BTreeNode node, Student student) {
-        int i = node.n - 1;
+    private static long[] sortedCopy(long[] studentIds) {
+        long[] sorted = studentIds.clone();
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i] < sorted[i - 1]) {
+                Arrays.sort(sorted);
+                break;
+            }
+        }
+        return sorted;
+    }
+
+    private static int firstIndex(long[] sorted, long studentId) {
+        // Position of the first occurrence of a student ID that is known to be in the sorted array.
+        int low = 0;
+        int high = sorted.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] < studentId) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int leafKeys(double fillFactor) {
+        // Records in a leaf packed to the fill factor, never below the minimum of t - 1.
+        return Math.max(t - 1, Math.min(2 * t - 1, (int) Math.ceil(fillFactor * (2 * t - 1))));
+    }
+
+    private int fanout(double fillFactor) {
+        // Children of an internal node packed to the fill factor, never below the minimum of t.
+        return Math.max(t, Math.min(2 * t, (int) Math.ceil(fillFactor * 2 * t)));
+    }
+
+    static int levelGroups(int slots, int target, int minimum) {
+        // Number of nodes needed to hold the given slots at the target size, reduced where needed
+        // so that an even spread still gives every node at least the minimum number of slots.
+        int groups = (slots + target - 1) / target;
+        return Math.max(1, Math.min(groups, slots / Math.max(1, minimum)));
+    }
+
+    static int groupSize(int slots, int groups, int group) {
+        // Spread the slots evenly; the first (slots % groups) nodes take one extra.
+        return slots / groups + (group < slots % groups ? 1 : 0);
+    }
+
+    private boolean appendable(long studentId) {
+        // The finger is only used while it is certain to be the live rightmost leaf with a free slot.
+        return lastLeaf != null && lastLeaf.epoch == epoch && lastLeaf.next == null
+                && lastLeaf.n > 0 && lastLeaf.n < 2 * t - 1 && studentId >= lastLeaf.keys[lastLeaf.n - 1];
+    }
+
+    private void insertNonFull(BTreeNode node, Student student, int level, boolean rightmost) {
         if (node.leaf) {
-            // If the node is a leaf node, insert the student record directly
-            while (i >= 0 && student.studentId < node.keys[i]) {
-                node.keys[i + 1] = node.keys[i];
-                node.values[i + 1] = node.values[i];
-                i--;
-            }
-            node.keys[i + 1] = student.studentId;
-            node.values[i + 1] = student.recordId;
+            // If the node is a leaf node, insert the student record directly after any equal keys
+            int i = findChildIndex(node, student.studentId);
+            System.arraycopy(node.keys, i, node.keys, i + 1, node.n - i);
+            System.arraycopy(node.values, i, node.values, i + 1, node.n - i);
+            node.keys[i] = student.studentId;
+            node.values[i] = student.recordId;
             node.n++;
+            if (node.next == null) {
+                lastLeaf = node;
+            }
         } else {
             // If the node is an internal node, recursively insert into the appropriate child node
-            while (i >= 0 && student.studentId < node.keys[i]) {
-                i--;
-            }
-            i++;
-            if (node.children[i].n == 2 * t - 1) {
-                // If the child node is full, split it before inserting
-                splitChild(node, i);
-                if (student.studentId > node.keys[i]) {
+            int i = findChildIndex(node, student.studentId);
+            node.children[i] = writable(node.children[i]);
+            BTreeNode child = node.children[i];
+            if (child.n == 2 * t - 1) {
+                // If the child node is full, split it before inserting. A key past everything on the right
+                // edge of the tree is likely the next of a sequential run, so the split is biased.
+                rightmost &= i == node.n;
+                splitChild(node, i, rightmost && student.studentId >= child.keys[child.n - 1]);
+                split(level - 1);
+                if (student.studentId >= node.keys[i]) {
                     i++;
                 }
             }
-            insertNonFull(node.children[i], student);
+            insertNonFull(node.children[i], student, level - 1, rightmost && i == node.n);
         }
     }
 
-    private void splitChild(BTreeNode parentNode, int childIndex) {
+    private void splitChild(BTreeNode parentNode, int childIndex, boolean append) {
         BTreeNode child = parentNode.children[childIndex];
-        BTreeNode newChild = new BTreeNode(t, child.leaf);
-        parentNode.n++;
+        BTreeNode newChild = newNode(child.leaf);
+        long separator;
+        int keep = append ? appendSplitPoint(child.leaf) : t - 1;
 
-        // Copy keys and values from the child node to the new child node
-        for (int j = 0; j < t - 1; j++) {
-            newChild.keys[j] = child.keys[j + t];
-            newChild.values[j] = child.values[j + t];
-        }
+        if (child.leaf) {
+            // A leaf keeps its first records and moves the rest to the new leaf. The first key of the new
+            // leaf is copied up as the separator, since every record has to stay in a leaf.
+            System.arraycopy(child.keys, keep, newChild.keys, 0, 2 * t - 1 - keep);
+            System.arraycopy(child.values, keep, newChild.values, 0, 2 * t - 1 - keep);
+            newChild.n = 2 * t - 1 - keep;
+            separator = newChild.keys[0];
 
-        if (!child.leaf) {
-            // Copy children pointers from the child node to the new child node
-            for (int j = 0; j < t; j++) {
-                newChild.children[j] = child.children[j + t];
+            // Link the new leaf into the leaf chain right after the old one.
+            newChild.next = child.next;
+            newChild.prev = child;
+            if (child.next != null) {
+                child.next.prev = newChild;
             }
+            child.next = newChild;
+        } else {
+            // An internal node moves the key after the kept ones up and splits the remaining keys and
+            // children.
+            System.arraycopy(child.keys, keep + 1, newChild.keys, 0, 2 * t - 2 - keep);
+            System.arraycopy(child.children, keep + 1, newChild.children, 0, 2 * t - 1 - keep);
+            for (int j = keep + 1; j < 2 * t; j++) {
+                child.children[j] = null;
+            }
+            newChild.n = 2 * t - 2 - keep;
+            separator = child.keys[keep];
         }
+        child.n = keep;
 
         // Shift keys and children pointers in the parent node to accommodate the new child
-        for (int j = parentNode.n - 1; j >= childIndex + 1; j--) {
+        for (int j = parentNode.n; j >= childIndex + 1; j--) {
             parentNode.children[j + 1] = parentNode.children[j];
         }
-
-        for (int j = parentNode.n - 2; j >= childIndex; j--) {
+        for (int j = parentNode.n - 1; j >= childIndex; j--) {
             parentNode.keys[j + 1] = parentNode.keys[j];
-            parentNode.values[j + 1] = parentNode.values[j];
         }
 
-        // Update the parent node with the key and value from the middle of the child node
-        parentNode.keys[childIndex] = child.keys[t - 1];
-        parentNode.values[childIndex] = child.values[t - 1];
-
-        // Update the sizes of the child and new child nodes
-        child.n = t - 1;
-        newChild.n = t - 1;
-
-        // Link the new child node to the parent node
+        // Link the new child node to the parent node behind the separator
+        parentNode.keys[childIndex] = separator;
         parentNode.children[childIndex + 1] = newChild;
+        parentNode.n++;
+    }
+
+    private int appendSplitPoint(boolean leaf) {
+        // Keys the left node keeps in a biased split: never fewer than an even split, and at least one
+        // key (leaf) or one separator (internal node) for the new right node. Only nodes on the right edge
+        // of the tree split this way, so only they may fall below the minimum occupancy.
+        int keep = (int) (APPEND_SPLIT_RATIO * (2 * t - 1));
+        return Math.max(t - 1, Math.min(leaf ? 2 * t - 2 : 2 * t - 3, keep));
     }
 
     /**
@@ -178,208 +1137,580 @@ class BTree {
      * @return True if the deletion was successful, False if the student is not found.
      */
     boolean delete(long studentId) {
-        if (root == null) {
-            return false; // The tree is empty, student not found
-        }
-
-        boolean isDeleted = deleteHelper(root, studentId);
+        long start = metrics != null ? System.nanoTime() : 0;
+        boolean filtered = filtered(studentId);
+        long recordId = heap != null ? lookup(studentId) : -1;
+        boolean isDeleted = deleteFromIndex(studentId);
         if (isDeleted) {
-            deleteFromCSV(studentId); // Delete from student.csv if it exists
+            deleted(studentId, recordId);
+            defragIfSparse();
+        }
+        if (metrics != null) {
+            metrics.deleted(1, isDeleted ? 0 : 1, filtered ? 0 : height(), System.nanoTime() - start);
         }
         return isDeleted;
     }
 
-    private void deleteFromCSV(long studentId) {
-        // Delete the student record with the given studentId from the CSV file.
-
-        // Create file objects for the input (original) file and a temporary file.
-        File inputFile = new File("src/Student.csv");
-        File tempFile = new File("src/temp.csv");
-
-        try (BufferedReader br = new BufferedReader(new FileReader(inputFile));
-             BufferedWriter bw = new BufferedWriter(new FileWriter(tempFile))) {
-
-            String line;
-            while ((line = br.readLine()) != null) {
-                // Read each line from the input file.
-                String[] values = line.split(",");
-                long currentStudentId = Long.parseLong(values[0]);
-
-                if (currentStudentId != studentId) {
-                    // If the studentId doesn't match, write the line to the temporary file.
-                    bw.write(line);
-                    bw.newLine();
+    /**
+     * Delete many student records at once. The IDs are visited in sorted order and share the descent
+     * from the root, so IDs that fall into the same leaf cost a single leaf visit.
+     *
+     * @param studentIds The student IDs to delete, in any order.
+     * @return For each given ID, in the same order, whether it was deleted. An ID that appears more than
+     * once is only reported as deleted the first time.
+     */
+    boolean[] deleteAll(long[] studentIds) {
+        long start = System.nanoTime();
+        long[] sorted = sortedCopy(studentIds);
+        boolean[] found = new boolean[sorted.length];
+        BatchPath path = paged == null && root != null ? new BatchPath(true) : null;
+        long visits = 0;
+        int removed = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i > 0 && sorted[i] == sorted[i - 1]) {
+                continue; // Already deleted, if it was there
+            }
+            if (filtered(sorted[i])) {
+                continue; // Not in the tree
+            }
+            if (path == null) {
+                long recordId = heap != null ? lookup(sorted[i]) : -1;
+                visits += height();
+                found[i] = deleteFromIndex(sorted[i]);
+                if (found[i]) {
+                    deleted(sorted[i], recordId);
                 }
+                continue;
             }
-        } catch (FileNotFoundException e) {
-            System.out.println("File not found: " + e.getMessage());
-        } catch (IOException e) {
-            System.out.println("Error reading/writing from/to Student.csv: " + e.getMessage());
+            BTreeNode leaf = path.leaf(sorted[i]);
+            int index = findKeyIndex(leaf, sorted[i]);
+            if (index < leaf.n && leaf.keys[index] == sorted[i]) {
+                long recordId = leaf.values[index];
+                removeFromLeaf(leaf, index);
+                filterDeleted();
+                deleted(sorted[i], recordId);
+                found[i] = true;
+                removed++;
+                if (leaf.n < t - 1) {
+                    // The leaf underflows: rebalancing may merge nodes on the path, so it is rebuilt after.
+                    visits += path.visits + height();
+                    rebalance(sorted[i]);
+                    path = root != null ? new BatchPath(true) : null;
+                }
+            }
+        }
+        if (path != null) {
+            visits += path.visits;
+        }
+        records(-removed);
+
+        boolean[] isDeleted = new boolean[studentIds.length];
+        int misses = 0;
+        for (int i = 0; i < studentIds.length; i++) {
+            int first = firstIndex(sorted, studentIds[i]);
+            isDeleted[i] = found[first];
+            found[first] = false;
+            if (!isDeleted[i]) {
+                misses++;
+            }
+        }
+        for (int i = misses; i < studentIds.length; i++) {
+            defragIfSparse();
+        }
+        if (metrics != null && studentIds.length > 0) {
+            metrics.deleted(studentIds.length, misses, visits, System.nanoTime() - start);
         }
+        return isDeleted;
+    }
 
-        // Rename the temporary file to replace the original file.
-        if (!tempFile.renameTo(inputFile)) {
-            System.out.println("Failed to update Student.csv.");
+    private void deleted(long studentId, long recordId) {
+        // Apply the side effects of a delete that has already been removed from the index.
+        if (indexes != null) {
+            indexes.remove(studentId);
+        }
+        if (cache != null) {
+            cache.invalidate(studentId);
+        }
+        if (heap != null) {
+            try {
+                heap.delete(recordId); // Free the slot of the row
+            } catch (IOException e) {
+                System.out.println("Error writing to the record file: " + e.getMessage());
+            }
+        }
+        if (dataFile != null) {
+            try {
+                dataFile.markDeleted(studentId); // Hide the row in student.csv if it is there
+            } catch (IOException e) {
+                System.out.println("Error writing to the tombstone file: " + e.getMessage());
+            }
+        }
+        if (log != null) {
+            try {
+                log.logDelete(studentId);
+            } catch (IOException e) {
+                System.out.println("Error writing to the write-ahead log: " + e.getMessage());
+            }
         }
     }
 
-    private boolean deleteHelper(BTreeNode node, long studentId) {
-        // Recursive helper function to delete a student record from the tree.
+    private boolean deleteFromIndex(long studentId) {
+        if (filtered(studentId)) {
+            return false; // The filter rules the student out
+        }
+        if (paged != null) {
+            boolean isDeleted = paged.delete(studentId);
+            if (isDeleted) {
+                filterDeleted();
+                records(-1);
+            }
+            return isDeleted;
+        }
+        if (root == null) {
+            return false; // The tree is empty, student not found
+        }
 
-        // Find the index of the key in the node that matches the studentId.
+        // Internal nodes only hold separators, so descend to the leaf that would hold the record. The path
+        // is remembered in case the leaf underflows.
+        growPath();
+        BTreeNode node = root;
+        for (int d = 0; !node.leaf; d++) {
+            int i = findChildIndex(node, studentId);
+            pathNodes[d] = node;
+            pathSlots[d] = i;
+            node = node.children[i];
+        }
         int index = findKeyIndex(node, studentId);
+        if (index == node.n || node.keys[index] != studentId) {
+            return false; // The studentId is not found in the tree.
+        }
+
+        if (node.epoch != epoch) {
+            // A snapshot may share the leaf: descend again, copying every node on the path. A leaf of the
+            // current epoch was reached through nodes of the current epoch only.
+            descend(studentId, height - 1);
+            node = pathNodes[height - 1];
+        }
+        pathNodes[height - 1] = node;
+        removeFromLeaf(node, index);
+        if (node.n < t - 1) {
+            fixUnderflow(height - 1);
+        }
+        filterDeleted();
+        records(-1);
+        return true; // Record was successfully deleted.
+    }
 
-        if (index < node.n && node.keys[index] == studentId) {
-            // The studentId is found in this node, handle the deletion.
+    private void rebalance(long studentId) {
+        // Descend again to the leaf that lost a record, then fix every underfull node on the way back up.
+        descend(studentId, height - 1);
+        fixUnderflow(height - 1);
+    }
 
-            if (node.leaf) {
-                // If the node is a leaf node, remove the key-value pair from it.
-                removeFromLeaf(node, index);
-            } else {
-                // If the node is an internal node, remove the key and handle underflows.
-                removeFromInternalNode(node, index);
+    private long descend(long studentId, int depth) {
+        // Record the path to the node at the given depth that covers the student ID, copying every node
+        // on it that a snapshot may share. Returns the upper fence of that node: the smallest separator
+        // to the right of the path, or Long.MAX_VALUE on the right edge of the tree.
+        growPath();
+        long fence = Long.MAX_VALUE;
+        root = writable(root);
+        pathNodes[0] = root;
+        for (int d = 0; d < depth; d++) {
+            BTreeNode node = pathNodes[d];
+            int i = findChildIndex(node, studentId);
+            if (i < node.n) {
+                fence = node.keys[i];
             }
+            node.children[i] = writable(node.children[i]);
+            pathSlots[d] = i;
+            pathNodes[d + 1] = node.children[i];
+        }
+        return fence;
+    }
 
-            return true; // Record was successfully deleted.
+    private void growPath() {
+        if (pathNodes.length < height) {
+            pathNodes = new BTreeNode[height];
+            pathSlots = new int[height];
         }
+    }
 
-        if (node.leaf) {
-            return false; // The studentId is not found in the tree.
+    private void fixUnderflow(int depth) {
+        // Walk up the recorded path from the given depth while nodes hold fewer than t - 1 keys. A merge
+        // takes a separator from the parent, which may then underflow in turn.
+        for (int d = depth; d > 0 && pathNodes[d].n < t - 1; d--) {
+            fixChild(pathNodes[d - 1], pathSlots[d - 1], height - 1 - d);
         }
 
-        // Recurse into the appropriate child node to find the record for deletion.
-        boolean shouldDescend = (index == node.n || studentId < node.keys[index]);
-        if (shouldDescend) {
-            return deleteHelper(node.children[index], studentId);
-        } else {
-            return deleteHelper(node.children[index + 1], studentId);
+        // A root left with a single child hands over to it; a root leaf left empty empties the tree.
+        while (!root.leaf && root.n == 0) {
+            root = root.children[0];
+            shrank();
+        }
+        if (root.leaf && root.n == 0) {
+            root = null;
+            lastLeaf = null;
+            shrank();
         }
     }
 
-    private int findKeyIndex(BTreeNode node, long studentId) {
-        // Binary search to find the index of the key in the node that matches the studentId.
-        int index = 0;
-        while (index < node.n && node.keys[index] < studentId) {
-            index++;
+    private void fixChild(BTreeNode parentNode, int childIndex, int level) {
+        // Borrow keys from siblings that can spare them, otherwise merge with a sibling. Either way the
+        // child ends up with at least t - 1 keys, and a merged pair never overflows. A child that packing
+        // left several keys short may borrow more than once.
+        BTreeNode child = parentNode.children[childIndex];
+        while (child.n < t - 1) {
+            if (childIndex > 0 && parentNode.children[childIndex - 1].n > t - 1) {
+                borrowFromLeft(parentNode, childIndex);
+            } else if (childIndex < parentNode.n && parentNode.children[childIndex + 1].n > t - 1) {
+                borrowFromRight(parentNode, childIndex);
+            } else {
+                if (childIndex > 0) {
+                    merge(parentNode, childIndex - 1, level);
+                } else if (childIndex < parentNode.n) {
+                    merge(parentNode, childIndex, level);
+                }
+                return;
+            }
         }
-        return index;
     }
 
-    private void removeFromLeaf(BTreeNode node, int index) {
-        // Remove the key-value pair from the leaf node at the given index.
-
-        // Shift all keys and values one position to the left to remove the key-value pair.
-        for (int i = index; i < node.n - 1; i++) {
-            node.keys[i] = node.keys[i + 1];
-            node.values[i] = node.values[i + 1];
+    private void borrowFromLeft(BTreeNode parentNode, int childIndex) {
+        BTreeNode child = parentNode.children[childIndex];
+        BTreeNode left = writable(parentNode.children[childIndex - 1]);
+        parentNode.children[childIndex - 1] = left;
+        System.arraycopy(child.keys, 0, child.keys, 1, child.n);
+        if (child.leaf) {
+            // The last record of the left leaf moves over and becomes the separator in front of the child.
+            System.arraycopy(child.values, 0, child.values, 1, child.n);
+            child.keys[0] = left.keys[left.n - 1];
+            child.values[0] = left.values[left.n - 1];
+            parentNode.keys[childIndex - 1] = child.keys[0];
+        } else {
+            // Rotate right: the separator comes down in front of the child, the left node's last key goes up.
+            System.arraycopy(child.children, 0, child.children, 1, child.n + 1);
+            child.keys[0] = parentNode.keys[childIndex - 1];
+            child.children[0] = left.children[left.n];
+            left.children[left.n] = null;
+            parentNode.keys[childIndex - 1] = left.keys[left.n - 1];
         }
-        node.n--;
+        child.n++;
+        left.n--;
     }
 
-    private void removeFromInternalNode(BTreeNode node, int index) {
-        // Remove the key and handle underflows in the internal node at the given index.
+    private void borrowFromRight(BTreeNode parentNode, int childIndex) {
+        BTreeNode child = parentNode.children[childIndex];
+        BTreeNode right = writable(parentNode.children[childIndex + 1]);
+        parentNode.children[childIndex + 1] = right;
+        if (child.leaf) {
+            // The first record of the right leaf moves over; the next one becomes the separator.
+            child.keys[child.n] = right.keys[0];
+            child.values[child.n] = right.values[0];
+            System.arraycopy(right.keys, 1, right.keys, 0, right.n - 1);
+            System.arraycopy(right.values, 1, right.values, 0, right.n - 1);
+            parentNode.keys[childIndex] = right.keys[0];
+        } else {
+            // Rotate left: the separator comes down behind the child, the right node's first key goes up.
+            child.keys[child.n] = parentNode.keys[childIndex];
+            child.children[child.n + 1] = right.children[0];
+            parentNode.keys[childIndex] = right.keys[0];
+            System.arraycopy(right.keys, 1, right.keys, 0, right.n - 1);
+            System.arraycopy(right.children, 1, right.children, 0, right.n);
+            right.children[right.n] = null;
+        }
+        child.n++;
+        right.n--;
+    }
 
-        long studentId = node.keys[index];
-        BTreeNode leftChild = node.children[index];
-        BTreeNode rightChild = node.children[index + 1];
+    private void merge(BTreeNode parentNode, int leftIndex, int level) {
+        // Move everything of the right child into the left one and drop the right child from the parent.
+        // The right child is only read, so a snapshot that shares it is unaffected.
+        BTreeNode left = writable(parentNode.children[leftIndex]);
+        BTreeNode right = parentNode.children[leftIndex + 1];
+        parentNode.children[leftIndex] = left;
+        if (left.leaf) {
+            System.arraycopy(right.keys, 0, left.keys, left.n, right.n);
+            System.arraycopy(right.values, 0, left.values, left.n, right.n);
+            left.n += right.n;
 
-        if (leftChild.n >= t) {
-            // Case 3a: If the left child has at least t keys, find the predecessor and recursively delete it.
-            long predecessorKey = getPredecessorKey(leftChild);
-            node.keys[index] = predecessorKey;
-            deleteHelper(leftChild, predecessorKey);
-        } else if (rightChild.n >= t) {
-            // Case 3a: If the right child has at least t keys, find the successor and recursively delete it.
-            long successorKey = getSuccessorKey(rightChild);
-            node.keys[index] = successorKey;
-            deleteHelper(rightChild, successorKey);
+            // Unlink the right leaf from the leaf chain; the left one takes over as the last leaf if needed.
+            left.next = right.next;
+            if (right.next != null) {
+                right.next.prev = left;
+            }
+            if (left.next == null) {
+                lastLeaf = left;
+            }
         } else {
-            // Case 3b: If both left and right children have t-1 keys, merge the left and right children
-            // and move the key from the current node to the merged node.
-            mergeChildren(node, index);
-            deleteHelper(leftChild, studentId); // Recursively delete the key from the merged node.
+            // The separator between the two comes down between their keys.
+            left.keys[left.n] = parentNode.keys[leftIndex];
+            System.arraycopy(right.keys, 0, left.keys, left.n + 1, right.n);
+            System.arraycopy(right.children, 0, left.children, left.n + 1, right.n + 1);
+            left.n += right.n + 1;
         }
+
+        System.arraycopy(parentNode.keys, leftIndex + 1, parentNode.keys, leftIndex, parentNode.n - leftIndex - 1);
+        System.arraycopy(parentNode.children, leftIndex + 2, parentNode.children, leftIndex + 1, parentNode.n - leftIndex - 1);
+        parentNode.children[parentNode.n] = null;
+        parentNode.n--;
+        merged(level);
     }
 
-    private long getPredecessorKey(BTreeNode node) {
-        // Find the predecessor key in the subtree rooted at the given node.
-        // The predecessor key is the rightmost key in the rightmost leaf of the left child.
-        while (!node.leaf) {
-            node = node.children[node.n];
+    private void defragIfSparse() {
+        // A delete pays for one bounded step of defragmentation while the leaves are sparse.
+        if (paged == null && height > 1 && records < DEFRAG_THRESHOLD * levelNodes[0] * (2 * t - 1)) {
+            defragStep();
         }
-        return node.keys[node.n - 1];
     }
 
-    private long getSuccessorKey(BTreeNode node) {
-        // Find the successor key in the subtree rooted at the given node.
-        // The successor key is the leftmost key in the leftmost leaf of the right child.
-        while (!node.leaf) {
-            node = node.children[0];
+    /**
+     * Take one step of online defragmentation: pack the children of one node into as few nodes as
+     * {@link #DEFAULT_FILL_FACTOR} allows, then fix the parent if it underflows. Steps sweep the tree from
+     * left to right, first the parents of the leaves, then each level above, so a step moves at most
+     * 2t nodes' worth of keys and the tree stays usable between steps. Deletes take a step on their own
+     * while the leaves are filled below {@link #DEFRAG_THRESHOLD}. Index files are not defragmented.
+     *
+     * @return True if the sweep has more steps to go, false once it has covered the whole tree; the next
+     * step then starts a new sweep.
+     */
+    boolean defragStep() {
+        if (paged != null || height < 2 || defragLevel >= height) {
+            defragLevel = 1;
+            defragKey = Long.MIN_VALUE;
+            return false;
         }
-        return node.keys[0];
-    }
+        int depth = height - 1 - defragLevel;
+        long fence = descend(defragKey, depth);
+        pack(pathNodes[depth], defragLevel);
+        fixUnderflow(depth);
 
-    private void mergeChildren(BTreeNode node, int index) {
-        // Merge the left and right children of the internal node at the given index.
+        // The next step packs the node right of the fence, or moves up a level at the end of this one.
+        if (fence == Long.MAX_VALUE) {
+            defragLevel++;
+            defragKey = Long.MIN_VALUE;
+        } else {
+            defragKey = fence;
+        }
+        if (defragLevel >= height) {
+            defragLevel = 1;
+            return false;
+        }
+        return true;
+    }
 
-        BTreeNode leftChild = node.children[index];
-        BTreeNode rightChild = node.children[index + 1];
+    /**
+     * Run {@link #defragStep()} until a whole sweep is done.
+     *
+     * @return The updated B+Tree.
+     */
+    BTree defragment() {
+        defragLevel = 1;
+        defragKey = Long.MIN_VALUE;
+        while (defragStep()) {
+            // Each step packs the children of one node
+        }
+        return this;
+    }
 
-        // Move the key from the current node to the left child.
-        leftChild.keys[leftChild.n] = node.keys[index];
-        leftChild.values[leftChild.n] = node.values[index];
-        leftChild.n++;
+    private void pack(BTreeNode parentNode, int level) {
+        // Rebuild the children of the node from their contents, packed to the default fill factor. The
+        // new nodes replace the old ones, which a snapshot may still share, so those are never changed.
+        int children = parentNode.n + 1;
+        int groups;
+        if (parentNode.children[0].leaf) {
+            int count = 0;
+            for (int j = 0; j < children; j++) {
+                count += parentNode.children[j].n;
+            }
+            groups = levelGroups(count, leafKeys(DEFAULT_FILL_FACTOR), t - 1);
+            if (groups >= children) {
+                return; // Packing would not free a leaf
+            }
+            long[] keys = new long[count];
+            long[] values = new long[count];
+            int pos = 0;
+            for (int j = 0; j < children; j++) {
+                BTreeNode leaf = parentNode.children[j];
+                System.arraycopy(leaf.keys, 0, keys, pos, leaf.n);
+                System.arraycopy(leaf.values, 0, values, pos, leaf.n);
+                pos += leaf.n;
+            }
 
-        // Move keys and values from the right child to the left child.
-        for (int i = 0; i < rightChild.n; i++) {
-            leftChild.keys[leftChild.n + i] = rightChild.keys[i];
-            leftChild.values[leftChild.n + i] = rightChild.values[i];
-        }
+            // Chain the new leaves in between the neighbours of the old ones.
+            BTreeNode prev = parentNode.children[0].prev;
+            BTreeNode next = parentNode.children[children - 1].next;
+            pos = 0;
+            for (int g = 0; g < groups; g++) {
+                BTreeNode leaf = newNode(true);
+                leaf.n = groupSize(count, groups, g);
+                System.arraycopy(keys, pos, leaf.keys, 0, leaf.n);
+                System.arraycopy(values, pos, leaf.values, 0, leaf.n);
+                pos += leaf.n;
+                leaf.prev = prev;
+                if (prev != null) {
+                    prev.next = leaf;
+                }
+                prev = leaf;
+                parentNode.children[g] = leaf;
+                if (g > 0) {
+                    parentNode.keys[g - 1] = leaf.keys[0];
+                }
+            }
+            prev.next = next;
+            if (next != null) {
+                next.prev = prev;
+            } else {
+                lastLeaf = prev;
+            }
+        } else {
+            // Line up the grandchildren with the separators between them, the parent's included.
+            int count = 0;
+            for (int j = 0; j < children; j++) {
+                count += parentNode.children[j].n + 1;
+            }
+            groups = levelGroups(count, fanout(DEFAULT_FILL_FACTOR), t);
+            if (groups >= children) {
+                return; // Packing would not free a node
+            }
+            BTreeNode[] below = new BTreeNode[count];
+            long[] separators = new long[count - 1];
+            int pos = 0;
+            for (int j = 0; j < children; j++) {
+                BTreeNode child = parentNode.children[j];
+                if (j > 0) {
+                    separators[pos - 1] = parentNode.keys[j - 1];
+                }
+                System.arraycopy(child.keys, 0, separators, pos, child.n);
+                System.arraycopy(child.children, 0, below, pos, child.n + 1);
+                pos += child.n + 1;
+            }
 
-        // If the nodes are not leaf nodes, also move children pointers.
-        if (!leftChild.leaf) {
-            for (int i = 0; i <= rightChild.n; i++) {
-                leftChild.children[leftChild.n + i] = rightChild.children[i];
+            // Each new node takes the separators between its own children; the one between two new
+            // nodes goes up to the parent.
+            pos = 0;
+            for (int g = 0; g < groups; g++) {
+                BTreeNode node = newNode(false);
+                int size = groupSize(count, groups, g);
+                System.arraycopy(below, pos, node.children, 0, size);
+                System.arraycopy(separators, pos, node.keys, 0, size - 1);
+                node.n = size - 1;
+                parentNode.children[g] = node;
+                if (g > 0) {
+                    parentNode.keys[g - 1] = separators[pos - 1];
+                }
+                pos += size;
             }
         }
-
-        // Shift keys and children pointers in the current node to fill the gap.
-        for (int i = index + 1; i < node.n; i++) {
-            node.keys[i - 1] = node.keys[i];
-            node.values[i - 1] = node.values[i];
-            node.children[i] = node.children[i + 1];
+        for (int j = groups; j < children; j++) {
+            parentNode.children[j] = null;
+            merged(level - 1);
         }
+        parentNode.n = groups - 1;
+    }
 
-        // Decrement the number of keys in the current node.
-        node.n--;
+    private int findKeyIndex(BTreeNode node, long studentId) {
+        // Find the index of the first key in the node that is greater than or equal to the studentId.
+        return keySearch.lowerBound(node.keys, node.n, studentId);
+    }
 
-        // Release the right child node.
-        rightChild = null;
+    private int findChildIndex(BTreeNode node, long studentId) {
+        // Find the child of an internal node whose subtree covers the studentId. A key equal to a
+        // separator belongs to the subtree on its right.
+        return keySearch.upperBound(node.keys, node.n, studentId);
+    }
+
+    private void removeFromLeaf(BTreeNode node, int index) {
+        // Remove the key-value pair from the leaf node at the given index.
+
+        // Shift all keys and values one position to the left to remove the key-value pair.
+        for (int i = index; i < node.n - 1; i++) {
+            node.keys[i] = node.keys[i + 1];
+            node.values[i] = node.values[i + 1];
+        }
+        node.n--;
     }
 
     List<Long> print() {
-        // Traverse the B+Tree and return a list of all record IDs in ascending order.
+        // Walk the leaf chain and return a list of all record IDs in ascending order.
+
+        if (paged != null) {
+            return paged.print();
+        }
 
         List<Long> listOfRecordID = new ArrayList<>();
-        printHelper(root, listOfRecordID);
+        if (root == null) {
+            return listOfRecordID;
+        }
+
+        // Descend to the leftmost leaf, then follow the next links.
+        BTreeNode node = root;
+        while (!node.leaf) {
+            node = node.children[0];
+        }
+        for (; node != null; node = node.next) {
+            for (int i = 0; i < node.n; i++) {
+                listOfRecordID.add(node.values[i]);
+            }
+        }
         return listOfRecordID;
     }
 
-    private void printHelper(BTreeNode node, List<Long> listOfRecordID) {
-        // Recursive helper function to traverse the B+Tree and collect record IDs.
+    /**
+     * Root-to-leaf path shared by the keys of a sorted batch. Every level remembers the upper fence of its
+     * node, the smallest separator above the node's keys, so the next key only climbs as far as it has to.
+     */
+    private final class BatchPath {
 
-        if (node != null) {
-            if (node.leaf) {
-                // If the node is a leaf node, add all record IDs to the list.
-                for (int i = 0; i < node.n; i++) {
-                    listOfRecordID.add(node.values[i]);
-                }
-            } else {
-                // If the node is an internal node, recursively traverse its children.
-                for (int i = 0; i < node.n + 1; i++) {
-                    printHelper(node.children[i], listOfRecordID);
+        private final BTreeNode[] nodes;
+        private final long[] fences;
+        /**
+         * True if the nodes on the path are copied before a snapshot can see them change.
+         */
+        private final boolean write;
+        /**
+         * Number of nodes read so far, counting the leaf once per key.
+         */
+        long visits;
+
+        BatchPath(boolean write) {
+            this.write = write;
+            if (write) {
+                root = writable(root);
+            }
+            int height = 1;
+            for (BTreeNode node = root; !node.leaf; node = node.children[0]) {
+                height++;
+            }
+            nodes = new BTreeNode[height];
+            fences = new long[height];
+            nodes[0] = root;
+            // The root covers every key, and no level below it is positioned yet.
+            Arrays.fill(fences, Long.MIN_VALUE);
+            fences[0] = Long.MAX_VALUE;
+        }
+
+        /**
+         * Move the path to the leaf that covers the given student ID. IDs must come in ascending order.
+         *
+         * @param studentId The student ID.
+         * @return The leaf.
+         */
+        BTreeNode leaf(long studentId) {
+            int level = nodes.length - 1;
+            while (level > 0 && studentId >= fences[level]) {
+                level--;
+            }
+            visits += nodes.length - level;
+            for (; level < nodes.length - 1; level++) {
+                BTreeNode node = nodes[level];
+                int i = findChildIndex(node, studentId);
+                if (write) {
+                    node.children[i] = writable(node.children[i]);
                 }
+                nodes[level + 1] = node.children[i];
+                fences[level + 1] = i < node.n ? node.keys[i] : fences[level];
             }
+            return nodes[nodes.length - 1];
         }
     }
 }
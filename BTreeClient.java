@@ -0,0 +1,179 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * Client for {@link BTreeServer}. The single-request methods wait for their response; the batch methods
+ * pipeline their requests, sending up to {@link #WINDOW} of them before reading the responses, so a
+ * batch costs one round trip per window instead of one per request.
+ * <p>
+ * Not thread-safe: each thread or process opens its own connection.
+ */
+class BTreeClient implements Closeable {
+
+    /**
+     * Requests in flight at most. Their responses must fit in the socket buffers, or the server would
+     * block writing responses while the client blocks writing requests.
+     */
+    static final int WINDOW = 1024;
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    /**
+     * Connect to a server on this machine.
+     *
+     * @param port The port the server listens on.
+     * @throws IOException If the connection fails.
+     */
+    BTreeClient(int port) throws IOException {
+        this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        this.socket.setTcpNoDelay(true);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+    }
+
+    /**
+     * Insert a student.
+     *
+     * @param student The student; its recordId is ignored.
+     * @return The record ID the server stored the student under, or -1 if the server could not store it,
+     * e.g. because a field does not fit in the record file. The connection stays usable either way.
+     * @throws IOException If the connection fails.
+     */
+    long insert(Student student) throws IOException {
+        writeInsert(student);
+        out.flush();
+        return readInsert();
+    }
+
+    /**
+     * Insert many students, pipelined.
+     *
+     * @param students The students; their recordIds are ignored.
+     * @return The record ID of each student, in order, or -1 where the server could not store it. A
+     * rejected student does not stop the others.
+     * @throws IOException If the connection fails.
+     */
+    long[] insertAll(Student[] students) throws IOException {
+        long[] recordIds = new long[students.length];
+        for (int from = 0; from < students.length; from += WINDOW) {
+            int to = Math.min(students.length, from + WINDOW);
+            for (int i = from; i < to; i++) {
+                writeInsert(students[i]);
+            }
+            out.flush();
+            for (int i = from; i < to; i++) {
+                recordIds[i] = readInsert();
+            }
+        }
+        return recordIds;
+    }
+
+    /**
+     * @param studentId The student ID to delete.
+     * @return True if the student was deleted, false if it was not found.
+     * @throws IOException If the connection fails.
+     */
+    boolean delete(long studentId) throws IOException {
+        out.writeByte(BTreeServer.DELETE);
+        out.writeLong(studentId);
+        out.flush();
+        return status() == BTreeServer.OK;
+    }
+
+    /**
+     * @param studentId The student ID to search for.
+     * @return The record ID of the student, or -1 if the student is not found.
+     * @throws IOException If the connection fails.
+     */
+    long search(long studentId) throws IOException {
+        writeSearch(studentId);
+        out.flush();
+        return readSearch();
+    }
+
+    /**
+     * Search for many students, pipelined.
+     *
+     * @param studentIds The student IDs to search for.
+     * @return The record ID of each student, in order, or -1 where a student is not found.
+     * @throws IOException If the connection fails.
+     */
+    long[] searchAll(long[] studentIds) throws IOException {
+        long[] recordIds = new long[studentIds.length];
+        for (int from = 0; from < studentIds.length; from += WINDOW) {
+            int to = Math.min(studentIds.length, from + WINDOW);
+            for (int i = from; i < to; i++) {
+                writeSearch(studentIds[i]);
+            }
+            out.flush();
+            for (int i = from; i < to; i++) {
+                recordIds[i] = readSearch();
+            }
+        }
+        return recordIds;
+    }
+
+    /**
+     * @return All record IDs in ascending order of student ID.
+     * @throws IOException If the connection fails.
+     */
+    long[] print() throws IOException {
+        out.writeByte(BTreeServer.PRINT);
+        out.flush();
+        status();
+        long[] recordIds = new long[in.readInt()];
+        for (int i = 0; i < recordIds.length; i++) {
+            recordIds[i] = in.readLong();
+        }
+        return recordIds;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    private void writeInsert(Student student) throws IOException {
+        out.writeByte(BTreeServer.INSERT);
+        out.writeLong(student.studentId);
+        out.writeInt(student.age);
+        out.writeUTF(student.studentName);
+        out.writeUTF(student.major);
+        out.writeUTF(student.level);
+    }
+
+    private long readInsert() throws IOException {
+        // A rejected insert is answered with ERROR and no record ID, and the connection goes on.
+        if (in.readByte() == BTreeServer.ERROR) {
+            return -1;
+        }
+        return in.readLong();
+    }
+
+    private void writeSearch(long studentId) throws IOException {
+        out.writeByte(BTreeServer.SEARCH);
+        out.writeLong(studentId);
+    }
+
+    private long readSearch() throws IOException {
+        return status() == BTreeServer.OK ? in.readLong() : -1;
+    }
+
+    private byte status() throws IOException {
+        // Only an insert may be rejected with the connection still open; any other ERROR ends it.
+        byte status = in.readByte();
+        if (status == BTreeServer.ERROR) {
+            socket.close();
+            throw new IOException("The server rejected the request and closed the connection");
+        }
+        return status;
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Position in the leaf chain of a {@link BTree}.
+ * <p>
+ * A cursor is created by {@link BTree#cursor(long)}, which descends the tree once. Moving it afterwards
+ * only follows the {@link BTreeNode#next} and {@link BTreeNode#prev} links between leaves. A cursor that
+ * moved past either end of the tree can be moved back again.
+ */
+class BTreeCursor {
+
+    /**
+     * Leaf the cursor is currently in. Null only for an empty tree.
+     */
+    private BTreeNode leaf;
+    /**
+     * Index of the current key in the leaf. -1 means before the first key of the tree and
+     * leaf.n means after the last one.
+     */
+    private int index;
+
+    BTreeCursor(BTreeNode leaf, int index) {
+        this.leaf = leaf;
+        this.index = index;
+        if (leaf != null && index >= leaf.n) {
+            // The start key is past this leaf; move on to the first key of the next non-empty leaf.
+            this.index = leaf.n - 1;
+            next();
+        }
+    }
+
+    /**
+     * @return True if the cursor points at a record, False if it is past either end of the tree.
+     */
+    boolean valid() {
+        return leaf != null && index >= 0 && index < leaf.n;
+    }
+
+    /**
+     * @return The student ID at the cursor. Only meaningful while {@link #valid()}.
+     */
+    long key() {
+        return leaf.keys[index];
+    }
+
+    /**
+     * @return The record ID at the cursor. Only meaningful while {@link #valid()}.
+     */
+    long value() {
+        return leaf.values[index];
+    }
+
+    /**
+     * Move to the next record in ascending student ID order.
+     *
+     * @return True if the cursor now points at a record.
+     */
+    boolean next() {
+        if (leaf == null) {
+            return false;
+        }
+        if (index + 1 < leaf.n) {
+            index++;
+            return true;
+        }
+        // Follow the leaf chain, skipping leaves that deletes have emptied.
+        BTreeNode node = leaf.next;
+        while (node != null && node.n == 0) {
+            node = node.next;
+        }
+        if (node == null) {
+            index = leaf.n; // Stay on the last leaf so that prev() can come back.
+            return false;
+        }
+        leaf = node;
+        index = 0;
+        return true;
+    }
+
+    /**
+     * Move to the previous record in ascending student ID order.
+     *
+     * @return True if the cursor now points at a record.
+     */
+    boolean prev() {
+        if (leaf == null) {
+            return false;
+        }
+        if (index - 1 >= 0 && leaf.n > 0) {
+            index = Math.min(index, leaf.n) - 1;
+            return true;
+        }
+        BTreeNode node = leaf.prev;
+        while (node != null && node.n == 0) {
+            node = node.prev;
+        }
+        if (node == null) {
+            index = -1; // Stay on the first leaf so that next() can come back.
+            return false;
+        }
+        leaf = node;
+        index = node.n - 1;
+        return true;
+    }
+
+    /**
+     * Copy record IDs into the buffer, starting at the cursor and stopping at the first student ID
+     * above hi or when the buffer is full. The cursor is left on the first record that was not copied.
+     *
+     * @param hi     The highest student ID to copy.
+     * @param buffer The buffer to fill.
+     * @return The number of record IDs copied.
+     */
+    int nextBatch(long hi, long[] buffer) {
+        int count = 0;
+        while (count < buffer.length && valid()) {
+            // Copy a run from the current leaf at a time rather than one record per call.
+            int end = index;
+            int limit = Math.min(leaf.n, index + buffer.length - count);
+            while (end < limit && leaf.keys[end] <= hi) {
+                end++;
+            }
+            System.arraycopy(leaf.values, index, buffer, count, end - index);
+            count += end - index;
+            index = end - 1;
+            if (end < limit || !next()) {
+                if (end < limit) {
+                    index = end;
+                }
+                break;
+            }
+        }
+        return count;
+    }
+}
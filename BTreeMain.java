@@ -1,129 +1,199 @@
-import java.io.BufferedReader;
-import java.io.File;
+import java.io.BufferedWriter;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Scanner;
-import java.util.Random;
+import javax.management.JMException;
 
 /**
  * Main Application.
  */
 public class BTreeMain {
 
+    /**
+     * Page size of an index file created from the command line.
+     */
+    private static final int INDEX_PAGE_SIZE = 4096;
+    /**
+     * Inserts and deletes are logged here and replayed on the next start.
+     */
+    private static final String LOG_FILE = "src/Student.wal";
+    /**
+     * Group commit: write the log once this many records are pending or the oldest is this many ms old.
+     */
+    private static final int LOG_BATCH_SIZE = 1024;
+    private static final long LOG_WINDOW_MILLIS = 10;
+    /**
+     * The student database. Deleted rows are purged once they make up this fraction of the file.
+     */
+    private static final String DATA_FILE = "src/Student.csv";
+    private static final double COMPACTION_RATIO = 0.2;
+    /**
+     * Binary copy of the student rows; a recordID is the slot of its row in this file.
+     */
+    private static final String RECORD_FILE = "src/Student.dat";
+    /**
+     * Fraction of searches and deletes for absent student IDs that still descend the tree.
+     */
+    private static final double FILTER_FALSE_POSITIVE_RATE = 0.01;
+    /**
+     * Number of full student rows kept in memory in front of the record file.
+     */
+    private static final int ROW_CACHE_SIZE = 10_000;
+
     public static void main(String[] args) {
 
+        /** With --serve <port> the tree is served over TCP instead of running input.txt */
+        int port = -1;
+        if (args.length >= 2 && args[0].equals("--serve")) {
+            try {
+                port = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid port: " + args[1]);
+                return;
+            }
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+
         /** Read the input file -- input.txt */
-        Scanner scan = null;
+        CommandReader commands;
         try {
-            scan = new Scanner(new File("src/input.txt"));
-        } catch (FileNotFoundException e) {
+            commands = CommandReader.open(Paths.get("src/input.txt"));
+        } catch (IOException e) {
             System.out.println("File not found.");
+            return;
         }
 
         /** Read the minimum degree of B+Tree first */
 
-        int degree = scan.nextInt();
+        int degree;
+        try {
+            commands.require("minimum degree");
+            degree = commands.intValue();
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Error reading the minimum degree: " + e.getMessage());
+            return;
+        }
+
+        /** An index file given on the command line is opened directly instead of being rebuilt */
+        BTree bTree;
+        try {
+            StudentDataFile dataFile = StudentDataFile.open(Paths.get(DATA_FILE), COMPACTION_RATIO);
+            RecordHeap heap = RecordHeap.open(Paths.get(RECORD_FILE));
+            Path indexFile = args.length > 0 ? Paths.get(args[0]) : null;
+            if (indexFile != null && indexFile.toFile().exists()) {
+                bTree = BTree.open(indexFile);
+            } else {
+                bTree = indexFile != null ? BTree.create(indexFile, INDEX_PAGE_SIZE) : new BTree(degree);
+
+                /** Reading the database into B+Tree Node: student.csv is copied into the record file once */
+                List<Student> studentsDB;
+                if (heap.isEmpty()) {
+                    studentsDB = getStudents(dataFile);
+                    heap.appendAll(studentsDB);
+                } else {
+                    studentsDB = new ArrayList<>();
+                    heap.forEach(studentsDB::add);
+                }
+
+                bTree.bulkLoad(studentsDB);
+            }
 
-        BTree bTree = new BTree(degree);
+            bTree.attach(dataFile);
+            bTree.attach(heap);
+            bTree.enableFilter(FILTER_FALSE_POSITIVE_RATE);
 
-        /** Reading the database student.csv into B+Tree Node */
-        List<Student> studentsDB = getStudents();
+            /** Apply the changes logged since the database was last loaded */
+            bTree.recover(WriteAheadLog.open(Paths.get(LOG_FILE), LOG_BATCH_SIZE, LOG_WINDOW_MILLIS, false));
 
-        for (Student s : studentsDB) {
-            bTree.insert(s);
+            /** Index major, level and age of the rows the tree points at */
+            SecondaryIndexes indexes = new SecondaryIndexes();
+            BTree tree = bTree;
+            heap.forEach(student -> {
+                if (tree.search(student.studentId) == student.recordId) {
+                    indexes.add(student);
+                }
+            });
+            bTree.attach(indexes);
+            bTree.attach(new StudentCache(ROW_CACHE_SIZE));
+        } catch (IOException e) {
+            System.out.println("Error opening the database: " + e.getMessage());
+            return;
         }
 
-        /** Start reading the operations now from input file */
+        /** Export operation counts, latencies and the shape of the tree over JMX */
+        BTreeMetrics metrics = new BTreeMetrics();
+        bTree.attach(metrics);
         try {
-            while (scan.hasNextLine()) {
-                Scanner s2 = new Scanner(scan.nextLine());
-
-                while (s2.hasNext()) {
-
-                    String operation = s2.next();
-
-                    switch (operation) {
-                        case "insert": {
-
-                            long studentId = Long.parseLong(s2.next());
-                            String studentName = s2.next() + " " + s2.next();
-                            String major = s2.next();
-                            String level = s2.next();
-                            int age = Integer.parseInt(s2.next());
-
-                            /** TODO: Write a logic to generate recordID */
-
-                            long recordID = new Random().nextLong(); // creates a random long
-                            if (s2.hasNext()) {
-                                recordID = Long.parseLong(s2.next()); // replaces long with input recordIDif it
-                                // exists
-                            }
-
-                            Student s = new Student(studentId, age, studentName, major, level, recordID);
-                            bTree.insert(s);
-
-                            break;
-                        }
-                        case "delete": {
-                            long studentId = Long.parseLong(s2.next());
-                            boolean result = bTree.delete(studentId);
-                            if (result)
-                                System.out.println("Student deleted successfully.");
-                            else
-                                System.out.println("Student deletion failed.");
-
-                            break;
-                        }
-                        case "search": {
-                            long studentId = Long.parseLong(s2.next());
-                            long recordID = bTree.search(studentId);
-                            if (recordID != -1)
-                                System.out.println("Student exists in the database at " + recordID);
-                            else
-                                System.out.println("Student does not exist.");
-                            break;
-                        }
-                        case "print": {
-                            List<Long> listOfRecordID = new ArrayList<>();
-                            listOfRecordID = bTree.print();
-                            System.out.println("List of recordIDs in B+Tree " + listOfRecordID.toString());
-                        }
-                        default:
-                            System.out.println("Wrong Operation");
-                            break;
-                    }
-                }
+            metrics.register("students");
+        } catch (JMException e) {
+            System.out.println("Error exporting the metrics: " + e.getMessage());
+        }
+
+        if (port >= 0) {
+            try {
+                commands.close();
+            } catch (IOException e) {
+                System.out.println("Error closing the input file: " + e.getMessage());
             }
+            serve(bTree, port);
+            return;
+        }
+
+        /** Start reading the operations now from input file; results are written in batches */
+        try (CommandReader reader = commands) {
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+            new CommandPipeline(bTree, reader, out).run();
+            bTree.close();
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
-    private static List<Student> getStudents() {
+    private static void serve(BTree bTree, int port) {
+        BTreeServer server;
+        try {
+            server = new BTreeServer(bTree, port);
+        } catch (IOException e) {
+            System.out.println("Error listening on port " + port + ": " + e.getMessage());
+            return;
+        }
+        /** The index, log and student files are flushed and closed when the process is stopped */
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+                bTree.close();
+            } catch (IOException e) {
+                System.out.println("Error closing the database: " + e.getMessage());
+            }
+        }));
+        System.out.println("Serving the B+Tree on port " + server.port());
+        try {
+            server.serve();
+        } catch (IOException e) {
+            System.out.println("Error accepting connections: " + e.getMessage());
+        }
+    }
+
+    private static List<Student> getStudents(StudentDataFile dataFile) {
 
         /**
-         * TODO: Extract the students information from "Students.csv" return the list<Students>
+         * Extract the students information from "Students.csv", skipping deleted rows
          */
 
-        List<Student> studentList = new ArrayList<>();
-
-        try (BufferedReader br = new BufferedReader(new FileReader("src/Student.csv"))) {
-            String line; // will store current row of csv as string
-            while ((line = br.readLine()) != null) {
-                String[] values = line.split(","); // gets all values in current row
-                studentList.add(new Student(Long.parseLong(values[0]), Integer.parseInt(values[4]),
-                        values[1], values[2], values[3], Long.parseLong(values[5]))); // creates a student and
-                // adds to arraylist
-            }
+        try {
+            return dataFile.load();
         } catch (FileNotFoundException e) {
             System.out.println("File not found.");
         } catch (IOException e) {
             System.out.println("File not found.");
         }
 
-        return studentList;
+        return new ArrayList<>();
     }
 }
\ No newline at end of file
@@ -0,0 +1,192 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Operation counters, latency histograms and shape of one {@link BTree}, attached with
+ * {@link BTree#attach(BTreeMetrics)}.
+ * <p>
+ * The tree reports every search, insert and delete with the number of nodes it read and the time it
+ * took, and every structural change as it happens, so the height and the fill factor of each level are
+ * always current without walking the tree. All counters may be read from any thread, e.g. over JMX,
+ * while the tree is in use; a snapshot taken during an operation may lag behind it by that operation.
+ */
+class BTreeMetrics implements BTreeMetricsMXBean {
+
+    /**
+     * Deepest tree whose levels are tracked; 64 levels of even a degree-2 tree exceed any key space.
+     */
+    private static final int MAX_LEVELS = 64;
+
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder searchMisses = new LongAdder();
+    private final LongAdder inserts = new LongAdder();
+    private final LongAdder deletes = new LongAdder();
+    private final LongAdder deleteMisses = new LongAdder();
+    private final LongAdder nodeVisits = new LongAdder();
+    private final LongAdder splits = new LongAdder();
+    private final LongAdder merges = new LongAdder();
+    private final LatencyHistogram searchLatency = new LatencyHistogram();
+    private final LatencyHistogram insertLatency = new LatencyHistogram();
+    private final LatencyHistogram deleteLatency = new LatencyHistogram();
+
+    /**
+     * Number of nodes on each level, leaves first.
+     */
+    private final AtomicLongArray nodesPerLevel = new AtomicLongArray(MAX_LEVELS);
+    private final AtomicLong records = new AtomicLong();
+    private volatile int height;
+    /**
+     * Capacity of a node in keys (2t - 1).
+     */
+    private volatile int maxKeys;
+
+    /**
+     * Record completed searches. A batch is recorded at once with its average latency.
+     *
+     * @param operations Number of searches.
+     * @param misses     Searches for students that were not found.
+     * @param visits     Nodes read by the searches.
+     * @param nanos      Time taken by all of them.
+     */
+    void searched(int operations, int misses, long visits, long nanos) {
+        searches.add(operations);
+        searchMisses.add(misses);
+        nodeVisits.add(visits);
+        searchLatency.record(nanos / operations, operations);
+    }
+
+    /**
+     * Record completed inserts. A batch is recorded at once with its average latency.
+     *
+     * @param operations Number of inserts.
+     * @param visits     Nodes read by the inserts.
+     * @param nanos      Time taken by all of them.
+     */
+    void inserted(int operations, long visits, long nanos) {
+        inserts.add(operations);
+        nodeVisits.add(visits);
+        insertLatency.record(nanos / operations, operations);
+    }
+
+    /**
+     * Record completed deletes. A batch is recorded at once with its average latency.
+     *
+     * @param operations Number of deletes.
+     * @param misses     Deletes of students that were not found.
+     * @param visits     Nodes read by the deletes.
+     * @param nanos      Time taken by all of them.
+     */
+    void deleted(int operations, int misses, long visits, long nanos) {
+        deletes.add(operations);
+        deleteMisses.add(misses);
+        nodeVisits.add(visits);
+        deleteLatency.record(nanos / operations, operations);
+    }
+
+    /**
+     * Record that records were added to or removed from the leaves.
+     *
+     * @param delta The change in the number of records.
+     */
+    void records(long delta) {
+        records.addAndGet(delta);
+    }
+
+    /**
+     * Record that a node on the given level was split in two.
+     *
+     * @param level The level of the node, 0 for a leaf.
+     */
+    void split(int level) {
+        splits.increment();
+        nodesPerLevel.incrementAndGet(level);
+    }
+
+    /**
+     * Record that two nodes on the given level were merged into one.
+     *
+     * @param level The level of the nodes, 0 for leaves.
+     */
+    void merged(int level) {
+        merges.increment();
+        nodesPerLevel.decrementAndGet(level);
+    }
+
+    /**
+     * Record that the tree grew a new root on top of the old one, or its first leaf.
+     */
+    void grew() {
+        int level = height;
+        nodesPerLevel.set(level, 1);
+        height = level + 1;
+    }
+
+    /**
+     * Record that the tree lost its root: an internal root left with a single child, which took its place,
+     * or a root leaf left empty.
+     */
+    void shrank() {
+        int level = height - 1;
+        nodesPerLevel.set(level, 0);
+        height = level;
+    }
+
+    /**
+     * Replace the tracked shape, when metrics are attached or the tree is rebuilt.
+     *
+     * @param maxKeys       Capacity of a node in keys.
+     * @param nodesPerLevel Number of nodes on each level, leaves first; its length is the height.
+     * @param records       Number of records in the tree.
+     */
+    void reset(int maxKeys, long[] nodesPerLevel, long records) {
+        this.maxKeys = maxKeys;
+        for (int level = 0; level < MAX_LEVELS; level++) {
+            this.nodesPerLevel.set(level, level < nodesPerLevel.length ? nodesPerLevel[level] : 0);
+        }
+        this.records.set(records);
+        this.height = nodesPerLevel.length;
+    }
+
+    /**
+     * @return A copy of all counters, with the fill factor of each level derived from the node counts.
+     */
+    BTreeMetricsSnapshot snapshot() {
+        int levels = height;
+        long[] nodes = new long[levels];
+        double[] fill = new double[levels];
+        long recordCount = records.get();
+        for (int level = 0; level < levels; level++) {
+            nodes[level] = nodesPerLevel.get(level);
+        }
+        for (int level = 0; level < levels; level++) {
+            // Leaves hold the records; an internal node with k children holds k - 1 separators.
+            long keys = level == 0 ? recordCount : nodes[level - 1] - nodes[level];
+            fill[level] = nodes[level] == 0 ? 0 : (double) keys / (nodes[level] * maxKeys);
+        }
+        return new BTreeMetricsSnapshot(searches.sum(), searchMisses.sum(), inserts.sum(), deletes.sum(),
+                deleteMisses.sum(), nodeVisits.sum(), splits.sum(), merges.sum(), levels, recordCount,
+                nodes, fill, searchLatency.summary(), insertLatency.summary(), deleteLatency.summary());
+    }
+
+    @Override
+    public BTreeMetricsSnapshot getSnapshot() {
+        return snapshot();
+    }
+
+    /**
+     * Export the metrics over JMX with the platform MBean server.
+     *
+     * @param name Name that tells this tree apart from others in the same JVM.
+     * @return The object name the metrics are registered under.
+     * @throws JMException If the name is invalid or already taken.
+     */
+    ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName("BTree:type=Metrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+}
@@ -0,0 +1,10 @@
+/**
+ * JMX view of {@link BTreeMetrics}, registered with {@link BTreeMetrics#register(String)}.
+ */
+public interface BTreeMetricsMXBean {
+
+    /**
+     * @return The current counters, structure and latencies of the tree.
+     */
+    BTreeMetricsSnapshot getSnapshot();
+}
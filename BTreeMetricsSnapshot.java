@@ -0,0 +1,145 @@
+import java.util.Arrays;
+
+/**
+ * Point-in-time copy of the {@link BTreeMetrics} of a tree. Levels are numbered from the leaves, so level 0
+ * is the leaf level and level height - 1 holds the root.
+ */
+public class BTreeMetricsSnapshot {
+
+    private final long searches;
+    private final long searchMisses;
+    private final long inserts;
+    private final long deletes;
+    private final long deleteMisses;
+    private final long nodeVisits;
+    private final long splits;
+    private final long merges;
+    private final int height;
+    private final long records;
+    private final long[] nodesPerLevel;
+    private final double[] fillFactorPerLevel;
+    private final LatencySummary searchLatency;
+    private final LatencySummary insertLatency;
+    private final LatencySummary deleteLatency;
+
+    BTreeMetricsSnapshot(long searches, long searchMisses, long inserts, long deletes, long deleteMisses,
+                         long nodeVisits, long splits, long merges, int height, long records,
+                         long[] nodesPerLevel, double[] fillFactorPerLevel, LatencySummary searchLatency,
+                         LatencySummary insertLatency, LatencySummary deleteLatency) {
+        this.searches = searches;
+        this.searchMisses = searchMisses;
+        this.inserts = inserts;
+        this.deletes = deletes;
+        this.deleteMisses = deleteMisses;
+        this.nodeVisits = nodeVisits;
+        this.splits = splits;
+        this.merges = merges;
+        this.height = height;
+        this.records = records;
+        this.nodesPerLevel = nodesPerLevel;
+        this.fillFactorPerLevel = fillFactorPerLevel;
+        this.searchLatency = searchLatency;
+        this.insertLatency = insertLatency;
+        this.deleteLatency = deleteLatency;
+    }
+
+    public long getSearches() {
+        return searches;
+    }
+
+    /**
+     * @return Searches for students that are not in the tree.
+     */
+    public long getSearchMisses() {
+        return searchMisses;
+    }
+
+    public long getInserts() {
+        return inserts;
+    }
+
+    public long getDeletes() {
+        return deletes;
+    }
+
+    /**
+     * @return Deletes of students that are not in the tree.
+     */
+    public long getDeleteMisses() {
+        return deleteMisses;
+    }
+
+    /**
+     * @return Nodes read by all searches, inserts and deletes together.
+     */
+    public long getNodeVisits() {
+        return nodeVisits;
+    }
+
+    /**
+     * @return Average number of nodes read by one search, insert or delete.
+     */
+    public double getNodeVisitsPerOperation() {
+        long operations = searches + inserts + deletes;
+        return operations == 0 ? 0 : (double) nodeVisits / operations;
+    }
+
+    public long getSplits() {
+        return splits;
+    }
+
+    public long getMerges() {
+        return merges;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return Number of student records in the tree.
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * @return Number of nodes on each level, leaves first.
+     */
+    public long[] getNodesPerLevel() {
+        return nodesPerLevel.clone();
+    }
+
+    /**
+     * @return Fraction of the key slots in use on each level, leaves first.
+     */
+    public double[] getFillFactorPerLevel() {
+        return fillFactorPerLevel.clone();
+    }
+
+    public LatencySummary getSearchLatency() {
+        return searchLatency;
+    }
+
+    public LatencySummary getInsertLatency() {
+        return insertLatency;
+    }
+
+    public LatencySummary getDeleteLatency() {
+        return deleteLatency;
+    }
+
+    @Override
+    public String toString() {
+        return "searches=" + searches + " (" + searchMisses + " misses), inserts=" + inserts
+                + ", deletes=" + deletes + " (" + deleteMisses + " misses)"
+                + String.format(", node visits/op=%.2f", getNodeVisitsPerOperation())
+                + ", splits=" + splits + ", merges=" + merges
+                + ", height=" + height + ", records=" + records
+                + ", nodes per level=" + Arrays.toString(nodesPerLevel)
+                + ", fill per level=" + Arrays.toString(fillFactorPerLevel)
+                + "\n  search: " + searchLatency
+                + "\n  insert: " + insertLatency
+                + "\n  delete: " + deleteLatency;
+    }
+}
@@ -5,13 +5,9 @@ class BTreeNode {
      */
     long[] keys;
     /**
-     * Array of the values[recordID] stored in the node. This will only be filled when the node is a leaf node.
+     * Array of the values[recordID] stored in the node. Only allocated when the node is a leaf node.
      */
     long[] values;
-    /**
-     * Minimum degree (defines the range for number of keys)
-     **/
-    int t;
     /**
      * Pointers to the children, if this node is not a leaf.  If
      * this node is a leaf, then null.
@@ -31,14 +27,25 @@ class BTreeNode {
      */
     BTreeNode next;
 
-    // Constructor
+    /**
+     * point to the previous leaf node when it is a leaf node. Otherwise null
+     */
+    BTreeNode prev;
+
+    /**
+     * Snapshot epoch the node was created in. Nodes from an older epoch may be shared with a snapshot and
+     * are copied before they are changed; only their leaf links are updated in place.
+     */
+    long epoch;
+
+    // Constructor. t is the minimum degree, which defines the range for number of keys.
     BTreeNode(int t, boolean leaf) {
-        this.t = t;
         this.leaf = leaf;
         this.keys = new long[2 * t - 1];
-        this.children = new BTreeNode[2 * t];
+        this.children = leaf ? null : new BTreeNode[2 * t];
         this.n = 0;
         this.next = null;
-        this.values = new long[2 * t - 1];
+        this.prev = null;
+        this.values = leaf ? new long[2 * t - 1] : null;
     }
 }
@@ -0,0 +1,253 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serves one B+Tree to many client processes over a local TCP port.
+ * <p>
+ * Every request is an opcode byte followed by its fields, big-endian; every response starts with a
+ * status byte:
+ * <pre>
+ * INSERT  studentId:long age:int name:utf major:utf level:utf  -> OK recordId:long | ERROR
+ * DELETE  studentId:long                                       -> OK | NOT_FOUND
+ * SEARCH  studentId:long                                       -> OK recordId:long | NOT_FOUND
+ * PRINT                                                        -> OK count:int recordId:long * count
+ * </pre>
+ * Strings use the modified UTF-8 of {@link DataOutputStream#writeUTF}. An insert the tree could not
+ * store, e.g. a row that does not fit in the record file, is answered with ERROR and the connection
+ * stays open. An unknown opcode is answered with ERROR and ends the connection. A request the tree fails
+ * on with an exception is not answered: the failure is logged and the connection ends, whatever the
+ * opcode. Requests on a connection are answered in order, so a client may send many requests before
+ * reading any response. Responses are buffered and only written to the socket once no further request
+ * is waiting in the input buffer, so a pipelined burst is answered in a few large writes.
+ * <p>
+ * Each connection runs on a virtual thread when the runtime has them (Java 21 and later), otherwise on a
+ * pooled platform thread. The tree is not thread-safe, so requests from all connections take turns on a
+ * single lock.
+ */
+class BTreeServer implements Closeable {
+
+    static final byte INSERT = 1;
+    static final byte DELETE = 2;
+    static final byte SEARCH = 3;
+    static final byte PRINT = 4;
+
+    static final byte OK = 0;
+    static final byte NOT_FOUND = 1;
+    static final byte ERROR = 2;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final BTree tree;
+    private final ReentrantLock treeLock = new ReentrantLock();
+    /**
+     * Set under the tree lock once the server is closed; no request touches the tree after that.
+     */
+    private boolean closed;
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections;
+    /**
+     * Connections that are open, closed along with the server.
+     */
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Listen on the loopback interface.
+     *
+     * @param tree The tree to serve.
+     * @param port The port, or 0 for any free port.
+     * @throws IOException If the port cannot be bound.
+     */
+    BTreeServer(BTree tree, int port) throws IOException {
+        this.tree = tree;
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        this.connections = newConnectionExecutor();
+    }
+
+    /**
+     * @return The port the server listens on.
+     */
+    int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accept connections until the server is closed.
+     *
+     * @throws IOException If accepting a connection fails for another reason than the server closing.
+     */
+    void serve() throws IOException {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                if (serverSocket.isClosed()) {
+                    return;
+                }
+                throw e;
+            }
+            socket.setTcpNoDelay(true);
+            sockets.add(socket);
+            connections.execute(() -> handle(socket));
+        }
+    }
+
+    /**
+     * Stop accepting connections and close the open ones. Waits for a request that is using the tree, so
+     * the caller may close the tree afterwards.
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        connections.shutdownNow();
+        for (Socket socket : sockets) {
+            socket.close(); // Wakes up a connection blocked on a read
+        }
+        treeLock.lock();
+        try {
+            closed = true;
+        } finally {
+            treeLock.unlock();
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE))) {
+            while (true) {
+                int opcode = in.read();
+                if (opcode == -1) {
+                    break; // The client closed the connection
+                }
+                if (!execute((byte) opcode, in, out)) {
+                    break;
+                }
+                if (in.available() == 0) {
+                    out.flush(); // Nothing more pipelined: send the batch before blocking on the next read
+                }
+            }
+            out.flush();
+        } catch (EOFException e) {
+            // The client closed the connection in the middle of a request
+        } catch (IOException e) {
+            if (!serverSocket.isClosed()) {
+                System.out.println("Error serving " + socket.getRemoteSocketAddress() + ": " + e.getMessage());
+            }
+        } catch (RuntimeException e) {
+            // The tree failed in the middle of a request, which may have changed it only in part
+            System.out.println("Error serving " + socket.getRemoteSocketAddress() + ": " + e);
+        } finally {
+            sockets.remove(socket);
+        }
+    }
+
+    private boolean execute(byte opcode, DataInputStream in, DataOutputStream out) throws IOException {
+        // Fields are read before the lock is taken, so a slow client never holds up the others.
+        switch (opcode) {
+            case INSERT: {
+                long studentId = in.readLong();
+                int age = in.readInt();
+                Student student = new Student(studentId, age, in.readUTF(), in.readUTF(), in.readUTF(), -1);
+                boolean stored;
+                lockTree();
+                try {
+                    stored = tree.insert(student);
+                } finally {
+                    treeLock.unlock();
+                }
+                if (!stored) {
+                    out.writeByte(ERROR); // The record file refused the row
+                } else {
+                    out.writeByte(OK);
+                    out.writeLong(student.recordId);
+                }
+                return true;
+            }
+            case DELETE: {
+                long studentId = in.readLong();
+                boolean deleted;
+                lockTree();
+                try {
+                    deleted = tree.delete(studentId);
+                } finally {
+                    treeLock.unlock();
+                }
+                out.writeByte(deleted ? OK : NOT_FOUND);
+                return true;
+            }
+            case SEARCH: {
+                long studentId = in.readLong();
+                long recordId;
+                lockTree();
+                try {
+                    recordId = tree.search(studentId);
+                } finally {
+                    treeLock.unlock();
+                }
+                if (recordId == -1) {
+                    out.writeByte(NOT_FOUND);
+                } else {
+                    out.writeByte(OK);
+                    out.writeLong(recordId);
+                }
+                return true;
+            }
+            case PRINT: {
+                long[] recordIds;
+                lockTree();
+                try {
+                    recordIds = tree.rangeSearch(Long.MIN_VALUE, Long.MAX_VALUE).toArray();
+                } finally {
+                    treeLock.unlock();
+                }
+                out.writeByte(OK);
+                out.writeInt(recordIds.length);
+                for (long recordId : recordIds) {
+                    out.writeLong(recordId);
+                }
+                return true;
+            }
+            default:
+                out.writeByte(ERROR);
+                return false;
+        }
+    }
+
+    private void lockTree() throws IOException {
+        treeLock.lock();
+        if (closed) {
+            treeLock.unlock();
+            throw new IOException("The server is closed");
+        }
+    }
+
+    private static ExecutorService newConnectionExecutor() {
+        // Virtual threads are looked up reflectively so that the server still builds for Java 17.
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "btree-connection");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
@@ -0,0 +1,77 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Round trip through {@link BTreeServer} and {@link BTreeClient} on a tree with a record file.
+ * <p>
+ * Usage: {@code java BTreeServerStress [students]}. The students are inserted in one pipelined batch with
+ * a single row in the middle whose name does not fit in the record file. That row must come back as -1
+ * while every other insert gets its own record ID, and the same connection must then find every stored
+ * student, miss the rejected one, and list all stored record IDs. Exits with status 1 on any mismatch.
+ */
+public class BTreeServerStress {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int students = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int rejected = students / 2;
+        long failures = 0;
+
+        Path dir = Files.createTempDirectory("btree-server");
+        Path recordFile = dir.resolve("Student.dat");
+        BTree tree = new BTree(16);
+        tree.attach(RecordHeap.open(recordFile));
+        BTreeServer server = new BTreeServer(tree, 0);
+        Thread serving = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException e) {
+                System.out.println("Error serving: " + e.getMessage());
+            }
+        }, "btree-server");
+        serving.start();
+
+        try (BTreeClient client = new BTreeClient(server.port())) {
+            Student[] rows = new Student[students];
+            for (int i = 0; i < students; i++) {
+                String name = i == rejected ? "N".repeat(RecordHeap.RECORD_SIZE) : "Student";
+                rows[i] = new Student(i, 20, name, "Major", "Level", -1);
+            }
+            long[] recordIds = client.insertAll(rows);
+            if (recordIds[rejected] != -1) {
+                failures++;
+            }
+            long[] ids = new long[students];
+            for (int i = 0; i < students; i++) {
+                ids[i] = i;
+                if (i != rejected && recordIds[i] < 0) {
+                    failures++;
+                }
+            }
+
+            // The responses after the rejected row were read in full, so the connection is still in step.
+            if (client.search(rejected) != -1 || client.search(0) != recordIds[0]) {
+                failures++;
+            }
+            if (!Arrays.equals(client.searchAll(ids), recordIds)) {
+                failures++;
+            }
+            long[] stored = Arrays.stream(recordIds).filter(recordId -> recordId >= 0).toArray();
+            if (!Arrays.equals(client.print(), stored)) {
+                failures++;
+            }
+        } finally {
+            server.close();
+            serving.join();
+            tree.close();
+            Files.deleteIfExists(recordFile);
+            Files.deleteIfExists(dir);
+        }
+
+        System.out.println(failures == 0 ? "OK" : "FAILED: " + failures + " mismatches");
+        if (failures != 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Immutable point-in-time view of an in-memory {@link BTree}, taken with {@link BTree#snapshot()}.
+ * <p>
+ * The tree never changes a node that a snapshot can reach, so a snapshot can be shared and read by any
+ * number of threads without locking while the tree keeps taking inserts and deletes. Scans descend
+ * through the child pointers instead of following the leaf links, because the tree relinks leaves in
+ * place when it copies them.
+ */
+class BTreeSnapshot {
+
+    /**
+     * Root node at the time of the snapshot, or null if the tree was empty. Final, so that the nodes it
+     * reaches are safely published to other threads.
+     */
+    private final BTreeNode root;
+    /**
+     * Strategy used to find a key inside a node.
+     */
+    private final KeySearch keySearch;
+
+    BTreeSnapshot(BTreeNode root, KeySearch keySearch) {
+        this.root = root;
+        this.keySearch = keySearch;
+    }
+
+    /**
+     * Search for a student record as of the snapshot.
+     *
+     * @param studentId The student ID to search for.
+     * @return The record ID associated with the student, or -1 if the student is not found.
+     */
+    long search(long studentId) {
+        if (root == null) {
+            return -1;
+        }
+        BTreeNode node = root;
+        while (!node.leaf) {
+            node = node.children[keySearch.upperBound(node.keys, node.n, studentId)];
+        }
+        int i = keySearch.lowerBound(node.keys, node.n, studentId);
+        return i < node.n && node.keys[i] == studentId ? node.values[i] : -1;
+    }
+
+    /**
+     * Return the record IDs of all students with an ID in [lo, hi] as of the snapshot, in ascending order
+     * of student ID.
+     *
+     * @param lo The lowest student ID to include.
+     * @param hi The highest student ID to include.
+     * @return The record IDs, streamed from the leaves.
+     */
+    LongStream rangeSearch(long lo, long hi) {
+        if (root == null) {
+            return LongStream.empty();
+        }
+
+        // Every leaf is at the same depth, so the path from the root fits in two arrays of that height.
+        int height = 1;
+        for (BTreeNode node = root; !node.leaf; node = node.children[0]) {
+            height++;
+        }
+        int leafDepth = height - 1;
+        BTreeNode[] path = new BTreeNode[height];
+        int[] index = new int[height];
+        BTreeNode node = root;
+        for (int depth = 0; depth < leafDepth; depth++) {
+            path[depth] = node;
+            index[depth] = keySearch.upperBound(node.keys, node.n, lo);
+            node = node.children[index[depth]];
+        }
+        path[leafDepth] = node;
+        index[leafDepth] = keySearch.lowerBound(node.keys, node.n, lo);
+
+        Spliterator.OfLong spliterator = new Spliterators.AbstractLongSpliterator(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE) {
+            @Override
+            public boolean tryAdvance(LongConsumer action) {
+                while (index[leafDepth] == path[leafDepth].n) {
+                    // Climb to the lowest ancestor with a child left to visit, then take its leftmost leaf.
+                    int depth = leafDepth - 1;
+                    while (depth >= 0 && index[depth] == path[depth].n) {
+                        depth--;
+                    }
+                    if (depth < 0) {
+                        return false;
+                    }
+                    index[depth]++;
+                    for (; depth < leafDepth; depth++) {
+                        path[depth + 1] = path[depth].children[index[depth]];
+                        index[depth + 1] = 0;
+                    }
+                }
+                BTreeNode leaf = path[leafDepth];
+                int i = index[leafDepth];
+                if (leaf.keys[i] > hi) {
+                    return false;
+                }
+                action.accept(leaf.values[i]);
+                index[leafDepth]++;
+                return true;
+            }
+        };
+        return StreamSupport.longStream(spliterator, false);
+    }
+
+    /**
+     * Return all record IDs as of the snapshot, in ascending order of student ID.
+     *
+     * @return The record IDs.
+     */
+    List<Long> print() {
+        List<Long> listOfRecordID = new ArrayList<>();
+        rangeSearch(Long.MIN_VALUE, Long.MAX_VALUE).forEach(listOfRecordID::add);
+        return listOfRecordID;
+    }
+}
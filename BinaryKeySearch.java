@@ -0,0 +1,38 @@
+/**
+ * Branch-free binary search over the keys of a node.
+ * <p>
+ * The loop always runs log2(n) times and only chooses between two offsets, which the JIT compiles to a
+ * conditional move instead of a hard-to-predict branch.
+ */
+class BinaryKeySearch implements KeySearch {
+
+    @Override
+    public int lowerBound(long[] keys, int from, int n, long key) {
+        if (n == 0) {
+            return 0;
+        }
+        int base = from;
+        int len = n;
+        while (len > 1) {
+            int half = len >>> 1;
+            base = keys[base + half - 1] < key ? base + half : base;
+            len -= half;
+        }
+        return base - from + (keys[base] < key ? 1 : 0);
+    }
+
+    @Override
+    public int upperBound(long[] keys, int from, int n, long key) {
+        if (n == 0) {
+            return 0;
+        }
+        int base = from;
+        int len = n;
+        while (len > 1) {
+            int half = len >>> 1;
+            base = keys[base + half - 1] <= key ? base + half : base;
+            len -= half;
+        }
+        return base - from + (keys[base] <= key ? 1 : 0);
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Blocked Bloom filter over student IDs: answers "definitely absent" or "maybe present".
+ * <p>
+ * The bit array is split into blocks of one cache line (512 bits). A key picks one block with one hash
+ * and sets or tests all of its bits inside that block, so a query touches a single cache line instead of
+ * one per hash function. That costs a slightly higher false-positive rate than a classic Bloom filter of
+ * the same size.
+ * <p>
+ * Bits cannot be cleared on delete, since other keys may share them. The filter only counts deletes and
+ * inserts beyond its capacity, and reports through {@link #saturated()} when it should be rebuilt from the
+ * keys that are left.
+ */
+class BloomFilter {
+
+    private static final int BLOCK_WORDS = 8;
+    private static final int BLOCK_BITS = BLOCK_WORDS * Long.SIZE;
+
+    private final long[] words;
+    private final int blocks;
+    /**
+     * Bits set per key.
+     */
+    private final int hashes;
+    private final long capacity;
+    private final double falsePositiveRate;
+    /**
+     * Keys added and deleted since the filter was built.
+     */
+    private long added;
+    private long deleted;
+
+    /**
+     * @param capacity          Number of keys the filter is sized for.
+     * @param falsePositiveRate Wanted fraction of absent keys reported as maybe present, in (0, 1).
+     */
+    BloomFilter(long capacity, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False-positive rate must be in (0, 1): " + falsePositiveRate);
+        }
+        this.capacity = Math.max(1, capacity);
+        this.falsePositiveRate = falsePositiveRate;
+        // Optimal size and number of hashes: m/n = -ln(p) / ln(2)^2, k = m/n * ln(2).
+        double bitsPerKey = -Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        long bits = (long) Math.ceil(this.capacity * bitsPerKey);
+        this.blocks = (int) Math.min(Integer.MAX_VALUE / BLOCK_WORDS, (bits + BLOCK_BITS - 1) / BLOCK_BITS);
+        this.hashes = Math.max(1, Math.min(16, (int) Math.round(bitsPerKey * Math.log(2))));
+        this.words = new long[blocks * BLOCK_WORDS];
+    }
+
+    /**
+     * Add a key.
+     *
+     * @param key The student ID.
+     */
+    void add(long key) {
+        long hash = hash(key);
+        int base = block(hash) * BLOCK_WORDS;
+        long second = hash * 0x9E3779B97F4A7C15L;
+        int position = (int) second;
+        int step = (int) (second >>> 32) | 1; // Odd, so the k positions in the block are all different
+        for (int i = 0; i < hashes; i++) {
+            int bit = position & (BLOCK_BITS - 1);
+            words[base + (bit >>> 6)] |= 1L << bit;
+            position += step;
+        }
+        added++;
+    }
+
+    /**
+     * @param key The student ID.
+     * @return False if the key was never added; true if it may have been.
+     */
+    boolean mightContain(long key) {
+        long hash = hash(key);
+        int base = block(hash) * BLOCK_WORDS;
+        long second = hash * 0x9E3779B97F4A7C15L;
+        int position = (int) second;
+        int step = (int) (second >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            int bit = position & (BLOCK_BITS - 1);
+            if ((words[base + (bit >>> 6)] & 1L << bit) == 0) {
+                return false;
+            }
+            position += step;
+        }
+        return true;
+    }
+
+    /**
+     * Count a key that was deleted from the set. Its bits stay set, so it keeps answering maybe present.
+     */
+    void deleted() {
+        deleted++;
+    }
+
+    /**
+     * @return True once more keys were added than the filter is sized for, or enough were deleted that a
+     * rebuild would noticeably lower the false-positive rate.
+     */
+    boolean saturated() {
+        return added > capacity || deleted > capacity / 2;
+    }
+
+    /**
+     * @return The false-positive rate the filter was sized for.
+     */
+    double falsePositiveRate() {
+        return falsePositiveRate;
+    }
+
+    /**
+     * @return Size of the bit array in bytes.
+     */
+    long footprint() {
+        return (long) words.length * Long.BYTES;
+    }
+
+    private int block(long hash) {
+        // Map the high half of the hash onto [0, blocks) without a division.
+        return (int) (((hash >>> 32) * blocks) >>> 32);
+    }
+
+    private static long hash(long key) {
+        // SplitMix64 finalizer: sequential student IDs must not land in neighbouring blocks.
+        long z = key + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
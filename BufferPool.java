@@ -0,0 +1,204 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of index pages between {@link PagedBTree} and its {@link PageFile}.
+ * <p>
+ * Pages are read into a fixed number of frames on demand. A pinned page is never evicted; when a page
+ * has to be read and no frame is free, the {@link EvictionPolicy} picks an unpinned frame to reuse.
+ * Modified pages are written back only when their frame is reused or on {@link #flush()}.
+ */
+class BufferPool implements PageAccess {
+
+    private static final int NO_PAGE = PageFile.NO_PAGE;
+
+    private final PageFile file;
+    private final EvictionPolicy policy;
+    private final ByteBuffer[] frames;
+    /**
+     * Page held by each frame, or NO_PAGE if the frame is free.
+     */
+    private final int[] framePage;
+    private final int[] pinCount;
+    private final boolean[] dirty;
+    /**
+     * Frame that holds each cached page.
+     */
+    private final Map<Integer, Integer> pageTable = new HashMap<>();
+    /**
+     * Number of frames that have never been used; they are handed out before anything is evicted.
+     */
+    private int unusedFrames;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long writeBacks;
+
+    /**
+     * @param file   The index file to cache.
+     * @param frames Number of pages to keep in memory. At least 8, since a split pins several pages at once.
+     * @param policy The eviction policy; it must not be shared with another pool.
+     */
+    BufferPool(PageFile file, int frames, EvictionPolicy policy) {
+        if (frames < 8) {
+            throw new IllegalArgumentException("A buffer pool needs at least 8 frames: " + frames);
+        }
+        this.file = file;
+        this.policy = policy;
+        this.frames = new ByteBuffer[frames];
+        this.framePage = new int[frames];
+        this.pinCount = new int[frames];
+        this.dirty = new boolean[frames];
+        for (int frame = 0; frame < frames; frame++) {
+            this.frames[frame] = ByteBuffer.allocate(file.pageSize());
+            this.framePage[frame] = NO_PAGE;
+        }
+        this.unusedFrames = frames;
+        policy.init(frames);
+    }
+
+    @Override
+    public ByteBuffer pin(int pageId) {
+        Integer cached = pageTable.get(pageId);
+        if (cached != null) {
+            hits++;
+            pinCount[cached]++;
+            policy.accessed(cached);
+            return frames[cached];
+        }
+
+        misses++;
+        int frame = claimFrame(pageId);
+        try {
+            file.read(pageId, frames[frame]);
+        } catch (IOException e) {
+            release(frame);
+            throw new UncheckedIOException("Error reading page " + pageId + " of the index file", e);
+        }
+        policy.loaded(frame);
+        return frames[frame];
+    }
+
+    @Override
+    public void unpin(int pageId, boolean modified) {
+        Integer frame = pageTable.get(pageId);
+        if (frame == null || pinCount[frame] == 0) {
+            throw new IllegalStateException("Page " + pageId + " is not pinned");
+        }
+        pinCount[frame]--;
+        dirty[frame] |= modified;
+    }
+
+    @Override
+    public int allocate() throws IOException {
+        int pageId = file.allocate();
+        // The page is new, so there is nothing to read; it only has to reach the file eventually.
+        int frame = claimFrame(pageId);
+        pinCount[frame] = 0;
+        dirty[frame] = true;
+        policy.loaded(frame);
+        return pageId;
+    }
+
+    @Override
+    public void reset() {
+        // The old pages are gone, so their frames are dropped without writing them back. Otherwise a
+        // reused page ID would map to two frames, and a stale dirty frame could overwrite the new page.
+        for (int frame = 0; frame < frames.length; frame++) {
+            if (pinCount[frame] != 0) {
+                throw new IllegalStateException("Page " + framePage[frame] + " is still pinned");
+            }
+            framePage[frame] = NO_PAGE;
+            dirty[frame] = false;
+        }
+        pageTable.clear();
+        unusedFrames = frames.length;
+        policy.init(frames.length);
+        file.reset();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        for (int frame = 0; frame < frames.length; frame++) {
+            if (dirty[frame]) {
+                writeBack(frame);
+            }
+        }
+    }
+
+    long hits() {
+        return hits;
+    }
+
+    long misses() {
+        return misses;
+    }
+
+    long evictions() {
+        return evictions;
+    }
+
+    long writeBacks() {
+        return writeBacks;
+    }
+
+    /**
+     * @return Fraction of pins served without reading the file, or 0 before the first pin.
+     */
+    double hitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BufferPool[frames=%d, hits=%d, misses=%d, hitRate=%.3f, evictions=%d, writeBacks=%d]",
+                frames.length, hits, misses, hitRate(), evictions, writeBacks);
+    }
+
+    private int claimFrame(int pageId) {
+        // Find a frame for the page, evicting another page if every frame is in use, and pin it once.
+        int frame;
+        if (unusedFrames > 0) {
+            frame = frames.length - unusedFrames;
+            unusedFrames--;
+        } else {
+            frame = policy.victim(f -> pinCount[f] == 0);
+            if (frame < 0) {
+                throw new IllegalStateException("Every buffer pool frame is pinned");
+            }
+            if (dirty[frame]) {
+                try {
+                    writeBack(frame);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Error writing page " + framePage[frame] + " of the index file", e);
+                }
+            }
+            pageTable.remove(framePage[frame]);
+            evictions++;
+        }
+        framePage[frame] = pageId;
+        pinCount[frame] = 1;
+        dirty[frame] = false;
+        pageTable.put(pageId, frame);
+        return frame;
+    }
+
+    private void release(int frame) {
+        // Give back a frame whose page could not be read, so the failed page is not cached.
+        pageTable.remove(framePage[frame]);
+        framePage[frame] = NO_PAGE;
+        pinCount[frame] = 0;
+        dirty[frame] = false;
+    }
+
+    private void writeBack(int frame) throws IOException {
+        file.write(framePage[frame], frames[frame]);
+        dirty[frame] = false;
+        writeBacks++;
+    }
+}
@@ -0,0 +1,78 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Stress run for an index file behind a small {@link BufferPool}.
+ * <p>
+ * Usage: {@code java BufferPoolStress [rounds] [insertsPerRound] [bufferPages]}. Every round bulk loads
+ * the tree again, which hands out the page IDs of the previous tree anew, then inserts random student
+ * IDs so that pages are split, evicted and read back, and finally checks every student ID. Each eviction
+ * policy gets its own tree. Exits with status 1 if anything is inconsistent.
+ */
+public class BufferPoolStress {
+
+    public static void main(String[] args) throws IOException {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int inserts = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+        int bufferPages = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+
+        long failures = 0;
+        Path indexFile = Files.createTempFile("btree", ".idx");
+        try {
+            for (EvictionPolicy policy : new EvictionPolicy[]{new ClockPolicy(), new LruPolicy(), new LruKPolicy(2)}) {
+                failures += run(indexFile, policy, rounds, inserts, bufferPages);
+            }
+        } finally {
+            Files.deleteIfExists(indexFile);
+        }
+
+        if (failures != 0) {
+            System.out.println("FAILED: " + failures + " inconsistent results");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    private static long run(Path indexFile, EvictionPolicy policy, int rounds, int inserts, int bufferPages) throws IOException {
+        Random random = new Random(rounds * 31L + inserts);
+        long failures = 0;
+        try (BTree tree = BTree.create(indexFile, 512, bufferPages, policy)) {
+            for (int round = 0; round < rounds; round++) {
+                // Every other round loads fewer rows, so the new tree ends where an old page is still cached.
+                int loaded = (round % 2 == 0 ? 2 : 1) * inserts;
+                List<Student> rows = new ArrayList<>();
+                for (long id = 0; id < loaded; id++) {
+                    rows.add(new Student(id * 2, 20, "Name", "Major", "Level", id * 2 + round));
+                }
+                tree.bulkLoad(rows);
+
+                long[] expected = new long[2 * loaded + 2 * inserts];
+                Arrays.fill(expected, -1);
+                for (Student row : rows) {
+                    expected[(int) row.studentId] = row.recordId;
+                }
+                for (int i = 0; i < inserts; i++) {
+                    int id = random.nextInt(expected.length);
+                    if (expected[id] == -1) {
+                        tree.insert(new Student(id, 20, "Name", "Major", "Level", id + round));
+                        expected[id] = id + round;
+                    }
+                }
+                // Check in descending order, so the first pages of the tree are the most recently used when
+                // the next bulk load allocates their IDs again.
+                for (int id = expected.length - 1; id >= 0; id--) {
+                    if (tree.search(id) != expected[id]) {
+                        failures++;
+                    }
+                }
+            }
+            System.out.printf("%s: %d rounds, %s%n", policy.getClass().getSimpleName(), rounds, tree.bufferPool());
+        }
+        return failures;
+    }
+}
@@ -0,0 +1,44 @@
+import java.util.function.IntPredicate;
+
+/**
+ * CLOCK (second chance) eviction: every access sets a reference bit, and the clock hand clears bits until
+ * it reaches an evictable frame whose bit is already clear. Cheaper to maintain than true LRU.
+ */
+class ClockPolicy implements EvictionPolicy {
+
+    private boolean[] referenced;
+    private int hand;
+
+    @Override
+    public void init(int frames) {
+        referenced = new boolean[frames];
+        hand = 0;
+    }
+
+    @Override
+    public void loaded(int frame) {
+        referenced[frame] = true;
+    }
+
+    @Override
+    public void accessed(int frame) {
+        referenced[frame] = true;
+    }
+
+    @Override
+    public int victim(IntPredicate evictable) {
+        // Two full sweeps are enough: the first clears every reference bit it passes.
+        for (int step = 0; step < 2 * referenced.length; step++) {
+            int frame = hand;
+            hand = (hand + 1) % referenced.length;
+            if (!evictable.test(frame)) {
+                continue;
+            }
+            if (!referenced[frame]) {
+                return frame;
+            }
+            referenced[frame] = false;
+        }
+        return -1;
+    }
+}
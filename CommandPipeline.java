@@ -0,0 +1,232 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Runs the commands of an input file such as input.txt against a tree.
+ * <p>
+ * A parser thread reads the commands with a {@link CommandReader} and hands them over in batches through a
+ * bounded queue, so parsing overlaps with execution without running ahead by more than a few batches.
+ * The calling thread executes the commands in file order and writes all results through one buffered
+ * writer, which is flushed only when it runs dry of commands or at the end.
+ */
+class CommandPipeline {
+
+    /**
+     * Commands per hand-over between the parser and the executor.
+     */
+    private static final int BATCH_SIZE = 1024;
+    /**
+     * Batches the parser may run ahead of the executor.
+     */
+    private static final int QUEUE_BATCHES = 64;
+
+    private static final byte INSERT = 1;
+    private static final byte DELETE = 2;
+    private static final byte SEARCH = 3;
+    private static final byte PRINT = 4;
+    private static final byte WRONG = 5;
+
+    private static final byte[] INSERT_WORD = "insert".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DELETE_WORD = "delete".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SEARCH_WORD = "search".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PRINT_WORD = "print".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Marks the end of the input in the queue.
+     */
+    private static final Command[] END = new Command[0];
+
+    private final BTree tree;
+    private final CommandReader reader;
+    private final BufferedWriter out;
+    private final BlockingQueue<Command[]> queue = new ArrayBlockingQueue<>(QUEUE_BATCHES);
+    /**
+     * Record IDs for inserts that give none, as before the pipeline. Only used by the parser thread.
+     */
+    private final Random random = new Random();
+    /**
+     * Why the parser stopped early, or null.
+     */
+    private volatile Throwable failure;
+
+    CommandPipeline(BTree tree, CommandReader reader, BufferedWriter out) {
+        this.tree = tree;
+        this.reader = reader;
+        this.out = out;
+    }
+
+    /**
+     * Parse and execute all remaining commands of the reader. If a command cannot be parsed, every command
+     * before it is still executed and its results written before the error is thrown.
+     *
+     * @throws IOException If the input cannot be read or parsed, or the output cannot be written.
+     */
+    void run() throws IOException {
+        Thread parser = new Thread(this::parse, "command-parser");
+        parser.setDaemon(true);
+        parser.start();
+        try {
+            while (true) {
+                Command[] batch = queue.poll();
+                if (batch == null) {
+                    // The parser is behind: show the results so far while waiting for it.
+                    out.flush();
+                    batch = queue.take();
+                }
+                if (batch == END) {
+                    break;
+                }
+                for (Command command : batch) {
+                    execute(command);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for commands");
+        } finally {
+            parser.interrupt();
+            out.flush();
+        }
+
+        Throwable e = failure;
+        if (e instanceof IOException) {
+            throw (IOException) e;
+        } else if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        } else if (e != null) {
+            throw new IOException("Error parsing the commands", e);
+        }
+    }
+
+    private void parse() {
+        Command[] batch = new Command[BATCH_SIZE];
+        int size = 0;
+        try {
+            do {
+                while (reader.next()) {
+                    Command command = parseCommand();
+                    batch[size++] = command;
+                    if (size == BATCH_SIZE) {
+                        queue.put(batch);
+                        batch = new Command[BATCH_SIZE];
+                        size = 0;
+                    }
+                }
+            } while (reader.nextLine());
+        } catch (InterruptedException e) {
+            return; // The executor has stopped
+        } catch (Throwable e) {
+            failure = e;
+        }
+        try {
+            if (size > 0) {
+                queue.put(Arrays.copyOf(batch, size));
+            }
+            queue.put(END);
+        } catch (InterruptedException e) {
+            // The executor has stopped
+        }
+    }
+
+    private Command parseCommand() throws IOException {
+        // The reader is on the operation; an unknown word is reported and the next word read as one.
+        if (reader.is(INSERT_WORD)) {
+            reader.require("student ID");
+            long studentId = reader.longValue();
+            reader.require("student name");
+            String studentName = reader.words(2, "student name");
+            reader.require("major");
+            String major = reader.string();
+            reader.require("level");
+            String level = reader.string();
+            reader.require("age");
+            int age = reader.intValue();
+
+            // A recordID given in the input is kept unless a record file assigns the slot on insert
+            long recordID = reader.next() ? reader.longValue() : random.nextLong();
+
+            return new Command(INSERT, studentId, new Student(studentId, age, studentName, major, level, recordID));
+        } else if (reader.is(DELETE_WORD)) {
+            reader.require("student ID");
+            return new Command(DELETE, reader.longValue(), null);
+        } else if (reader.is(SEARCH_WORD)) {
+            reader.require("student ID");
+            return new Command(SEARCH, reader.longValue(), null);
+        } else if (reader.is(PRINT_WORD)) {
+            return new Command(PRINT, 0, null);
+        }
+        return new Command(WRONG, 0, null);
+    }
+
+    private void execute(Command command) throws IOException {
+        switch (command.operation) {
+            case INSERT:
+                tree.insert(command.student);
+                break;
+            case DELETE:
+                out.write(tree.delete(command.studentId)
+                        ? "Student deleted successfully."
+                        : "Student deletion failed.");
+                out.newLine();
+                break;
+            case SEARCH: {
+                long recordID = tree.search(command.studentId);
+                if (recordID != -1) {
+                    out.write("Student exists in the database at ");
+                    out.write(Long.toString(recordID));
+                } else {
+                    out.write("Student does not exist.");
+                }
+                out.newLine();
+                break;
+            }
+            case PRINT: {
+                // Stream the record IDs straight from the leaves instead of building the list first.
+                out.write("List of recordIDs in B+Tree [");
+                PrimitiveIterator.OfLong recordIDs = tree.rangeSearch(Long.MIN_VALUE, Long.MAX_VALUE).iterator();
+                while (recordIDs.hasNext()) {
+                    out.write(Long.toString(recordIDs.nextLong()));
+                    if (recordIDs.hasNext()) {
+                        out.write(", ");
+                    }
+                }
+                out.write(']');
+                out.newLine();
+                break;
+            }
+            default:
+                out.write("Wrong Operation");
+                out.newLine();
+                break;
+        }
+    }
+
+    /**
+     * One parsed command.
+     */
+    private static final class Command {
+
+        final byte operation;
+        /**
+         * Student to delete or search for.
+         */
+        final long studentId;
+        /**
+         * Student to insert, or null.
+         */
+        final Student student;
+
+        Command(byte operation, long studentId, Student student) {
+            this.operation = operation;
+            this.studentId = studentId;
+            this.student = student;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Tokenizer for command files such as input.txt, reading straight from a channel into one reusable buffer.
+ * <p>
+ * Tokens are separated by blanks and never cross a line. They are compared and parsed as numbers in
+ * place in the buffer, so only the text fields that end up in a {@link Student} are turned into
+ * strings. A token is valid until the next call to {@link #next()} or {@link #nextLine()}.
+ */
+class CommandReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final ReadableByteChannel channel;
+    private byte[] bytes = new byte[BUFFER_SIZE];
+    private ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    /**
+     * Bytes [0, limit) of the buffer hold data; pos is the next byte to read.
+     */
+    private int pos;
+    private int limit;
+    private boolean eof;
+    /**
+     * Bounds of the current token in the buffer.
+     */
+    private int tokenStart;
+    private int tokenEnd;
+    /**
+     * Start of a multi-token field that must stay in the buffer, or -1.
+     */
+    private int retain = -1;
+
+    CommandReader(ReadableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Open a command file.
+     *
+     * @param file The command file.
+     * @return The reader, positioned at the start of the first line.
+     * @throws IOException If the file cannot be opened.
+     */
+    static CommandReader open(Path file) throws IOException {
+        return new CommandReader(FileChannel.open(file));
+    }
+
+    /**
+     * Move to the next token on the current line.
+     *
+     * @return True if there is one, false at the end of the line or the file.
+     * @throws IOException If the file cannot be read.
+     */
+    boolean next() throws IOException {
+        while (true) {
+            if (pos == limit && !fill(pos)) {
+                return false;
+            }
+            byte b = bytes[pos];
+            if (b == '\n') {
+                return false;
+            }
+            if (!isBlank(b)) {
+                break;
+            }
+            pos++;
+        }
+        tokenStart = pos;
+        while (true) {
+            if (pos == limit && !fill(tokenStart)) {
+                break;
+            }
+            byte b = bytes[pos];
+            if (b == '\n' || isBlank(b)) {
+                break;
+            }
+            pos++;
+        }
+        tokenEnd = pos;
+        return true;
+    }
+
+    /**
+     * Skip whatever is left of the current line.
+     *
+     * @return True if another line follows, false at the end of the file.
+     * @throws IOException If the file cannot be read.
+     */
+    boolean nextLine() throws IOException {
+        while (true) {
+            if (pos == limit && !fill(pos)) {
+                return false;
+            }
+            if (bytes[pos++] == '\n') {
+                return pos < limit || fill(pos);
+            }
+        }
+    }
+
+    /**
+     * Move to the next token on the current line, which has to be there.
+     *
+     * @param field Name of the expected field, for the error message.
+     * @throws IOException If the file cannot be read.
+     */
+    void require(String field) throws IOException {
+        if (!next()) {
+            throw new NoSuchElementException("Missing " + field);
+        }
+    }
+
+    /**
+     * @param word An ASCII word.
+     * @return True if the current token is exactly that word.
+     */
+    boolean is(byte[] word) {
+        if (tokenEnd - tokenStart != word.length) {
+            return false;
+        }
+        for (int i = 0; i < word.length; i++) {
+            if (bytes[tokenStart + i] != word[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The current token parsed as a decimal long.
+     * @throws NumberFormatException If the token is not a number in range.
+     */
+    long longValue() {
+        int i = tokenStart;
+        boolean negative = bytes[i] == '-';
+        if (negative || bytes[i] == '+') {
+            i++;
+        }
+        if (i == tokenEnd) {
+            throw new NumberFormatException("For input string: \"" + string() + "\"");
+        }
+        // Accumulate negatively so that Long.MIN_VALUE parses too.
+        long value = 0;
+        for (; i < tokenEnd; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9 || value < (Long.MIN_VALUE + digit) / 10) {
+                throw new NumberFormatException("For input string: \"" + string() + "\"");
+            }
+            value = value * 10 - digit;
+        }
+        if (!negative && value == Long.MIN_VALUE) {
+            throw new NumberFormatException("For input string: \"" + string() + "\"");
+        }
+        return negative ? value : -value;
+    }
+
+    /**
+     * @return The current token parsed as a decimal int.
+     * @throws NumberFormatException If the token is not a number in range.
+     */
+    int intValue() {
+        long value = longValue();
+        if (value != (int) value) {
+            throw new NumberFormatException("For input string: \"" + string() + "\"");
+        }
+        return (int) value;
+    }
+
+    /**
+     * @return The current token as a string.
+     */
+    String string() {
+        return new String(bytes, tokenStart, tokenEnd - tokenStart, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read the current token and the ones after it on the line as one string, joined by single spaces,
+     * e.g. a first and last name.
+     *
+     * @param words Number of tokens, at least 1; the current one is the first.
+     * @param field Name of the field, for the error message.
+     * @return The joined tokens.
+     * @throws IOException If the file cannot be read.
+     */
+    String words(int words, String field) throws IOException {
+        // Keep the first token in the buffer, so that the usual single-spaced tokens decode in one go.
+        retain = tokenStart;
+        try {
+            for (int i = 1; i < words; i++) {
+                require(field);
+            }
+            int spaces = 0;
+            boolean plain = true;
+            for (int i = retain; i < tokenEnd; i++) {
+                if (bytes[i] == ' ') {
+                    spaces++;
+                } else if (isBlank(bytes[i])) {
+                    plain = false;
+                }
+            }
+            String joined = new String(bytes, retain, tokenEnd - retain, StandardCharsets.UTF_8);
+            return plain && spaces == words - 1 ? joined : String.join(" ", joined.split("[ \t\r]+"));
+        } finally {
+            retain = -1;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    private boolean fill(int keep) throws IOException {
+        // Read more input, first moving the bytes from keep onwards to the front of the buffer.
+        if (eof) {
+            return false;
+        }
+        if (retain >= 0) {
+            keep = Math.min(keep, retain);
+        }
+        if (keep > 0) {
+            System.arraycopy(bytes, keep, bytes, 0, limit - keep);
+            limit -= keep;
+            pos -= keep;
+            tokenStart -= keep;
+            tokenEnd -= keep;
+            if (retain >= 0) {
+                retain -= keep;
+            }
+        } else if (limit == bytes.length) {
+            // A single token fills the whole buffer.
+            bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            buffer = ByteBuffer.wrap(bytes);
+        }
+        buffer.limit(bytes.length).position(limit);
+        int read = channel.read(buffer);
+        if (read < 0) {
+            eof = true;
+            return false;
+        }
+        limit += read;
+        return read > 0 || fill(0);
+    }
+}
@@ -0,0 +1,238 @@
+/**
+ * Thread-safe B+Tree using optimistic lock coupling.
+ * <p>
+ * Same layout as {@link BTree}: records live in the leaves and internal nodes hold separator keys.
+ * Every node carries a version latch ({@link VersionedNode}). Lookups take no latches at all; they
+ * validate the version of each node after reading it and restart from the root if a writer got in the
+ * way. Writers descend the same way and latch only the leaf they change, or the parent and child of a
+ * split. Full nodes are split on the way down, so a split never has to propagate upwards.
+ * <p>
+ * Deletes remove the record from its leaf and never rebalance: unlike {@link BTree#delete(long)}, nodes
+ * are not borrowed from, merged or defragmented, so a node is never unlinked once it is in the tree and
+ * leaves may fall below the minimum occupancy.
+ */
+class ConcurrentBTree {
+
+    /**
+     * Pointer to the root node. Only replaced while the old root is latched.
+     */
+    private volatile VersionedNode root;
+    /**
+     * Minimum degree of the tree; every node holds at most 2t - 1 keys.
+     */
+    private final int t;
+    /**
+     * Strategy used to search the keys inside a node.
+     */
+    private final KeySearch keySearch;
+
+    ConcurrentBTree(int t) {
+        if (t < 2) {
+            throw new IllegalArgumentException("Minimum degree must be at least 2: " + t);
+        }
+        this.t = t;
+        this.keySearch = KeySearch.forDegree(t);
+        this.root = new VersionedNode(t, true);
+    }
+
+    /**
+     * Search for a student record without taking any latch.
+     *
+     * @param studentId The student ID to search for.
+     * @return The record ID associated with the student, or -1 if the student is not found.
+     */
+    long search(long studentId) {
+        long[] version = new long[1];
+        while (true) {
+            VersionedNode leaf = findLeaf(studentId, version);
+            if (leaf == null) {
+                continue;
+            }
+            int n = count(leaf);
+            int i = keySearch.lowerBound(leaf.keys, n, studentId);
+            long recordId = i < n && leaf.keys[i] == studentId ? leaf.values[i] : -1;
+            if (leaf.validate(version[0])) {
+                return recordId;
+            }
+        }
+    }
+
+    /**
+     * Insert a student record, or replace the record ID if the student is already in the tree.
+     *
+     * @param studentId The student ID.
+     * @param recordId  The record ID.
+     */
+    void insert(long studentId, long recordId) {
+        restart:
+        while (true) {
+            VersionedNode node = root;
+            long v = node.readLock();
+            if (v == VersionedNode.RESTART || node != root) {
+                continue;
+            }
+            VersionedNode parent = null;
+            long parentVersion = 0;
+
+            while (true) {
+                if (count(node) == 2 * t - 1) {
+                    // Split full nodes on the way down, latching only the node and its parent.
+                    if (parent != null && !parent.upgrade(parentVersion)) {
+                        continue restart;
+                    }
+                    if (!node.upgrade(v)) {
+                        if (parent != null) {
+                            parent.writeUnlock();
+                        }
+                        continue restart;
+                    }
+                    split(parent, node);
+                    node.writeUnlock();
+                    if (parent != null) {
+                        parent.writeUnlock();
+                    }
+                    continue restart;
+                }
+                if (parent != null && !parent.validate(parentVersion)) {
+                    continue restart;
+                }
+                if (node.leaf) {
+                    break;
+                }
+
+                parent = node;
+                parentVersion = v;
+                VersionedNode child = node.children[keySearch.upperBound(node.keys, count(node), studentId)];
+                if (child == null || !node.validate(v)) {
+                    continue restart;
+                }
+                node = child;
+                v = node.readLock();
+                if (v == VersionedNode.RESTART) {
+                    continue restart;
+                }
+            }
+
+            // The leaf has room; its version proves it still covers the key once the latch is taken.
+            if (!node.upgrade(v)) {
+                continue;
+            }
+            int n = node.n;
+            int i = keySearch.lowerBound(node.keys, n, studentId);
+            if (i < n && node.keys[i] == studentId) {
+                node.values[i] = recordId;
+            } else {
+                System.arraycopy(node.keys, i, node.keys, i + 1, n - i);
+                System.arraycopy(node.values, i, node.values, i + 1, n - i);
+                node.keys[i] = studentId;
+                node.values[i] = recordId;
+                node.n = n + 1;
+            }
+            node.writeUnlock();
+            return;
+        }
+    }
+
+    /**
+     * Delete a student record, latching only its leaf.
+     *
+     * @param studentId The student ID to delete.
+     * @return True if the deletion was successful, False if the student is not found.
+     */
+    boolean delete(long studentId) {
+        long[] version = new long[1];
+        while (true) {
+            VersionedNode leaf = findLeaf(studentId, version);
+            if (leaf == null || !leaf.upgrade(version[0])) {
+                continue;
+            }
+            int n = leaf.n;
+            int i = keySearch.lowerBound(leaf.keys, n, studentId);
+            boolean found = i < n && leaf.keys[i] == studentId;
+            if (found) {
+                System.arraycopy(leaf.keys, i + 1, leaf.keys, i, n - i - 1);
+                System.arraycopy(leaf.values, i + 1, leaf.values, i, n - i - 1);
+                leaf.n = n - 1;
+            }
+            leaf.writeUnlock();
+            return found;
+        }
+    }
+
+    private VersionedNode findLeaf(long studentId, long[] version) {
+        // Descend without latches. Returns null if the descent has to restart; otherwise the leaf, with
+        // the version it was read at in version[0].
+        VersionedNode node = root;
+        long v = node.readLock();
+        if (v == VersionedNode.RESTART || node != root) {
+            return null;
+        }
+        VersionedNode parent = null;
+        long parentVersion = 0;
+        while (!node.leaf) {
+            if (parent != null && !parent.validate(parentVersion)) {
+                return null;
+            }
+            parent = node;
+            parentVersion = v;
+            VersionedNode child = node.children[keySearch.upperBound(node.keys, count(node), studentId)];
+            if (child == null || !node.validate(v)) {
+                return null;
+            }
+            node = child;
+            v = node.readLock();
+            if (v == VersionedNode.RESTART) {
+                return null;
+            }
+        }
+        if (parent != null && !parent.validate(parentVersion)) {
+            return null;
+        }
+        version[0] = v;
+        return node;
+    }
+
+    private void split(VersionedNode parent, VersionedNode node) {
+        // Both nodes are latched by the caller. A null parent means the node is the root.
+        VersionedNode sibling = new VersionedNode(t, node.leaf);
+        long separator;
+        if (node.leaf) {
+            System.arraycopy(node.keys, t - 1, sibling.keys, 0, t);
+            System.arraycopy(node.values, t - 1, sibling.values, 0, t);
+            sibling.n = t;
+            separator = sibling.keys[0];
+        } else {
+            System.arraycopy(node.keys, t, sibling.keys, 0, t - 1);
+            System.arraycopy(node.children, t, sibling.children, 0, t);
+            sibling.n = t - 1;
+            separator = node.keys[t - 1];
+        }
+        node.n = t - 1;
+
+        if (parent == null) {
+            VersionedNode newRoot = new VersionedNode(t, false);
+            newRoot.children[0] = node;
+            newRoot.children[1] = sibling;
+            newRoot.keys[0] = separator;
+            newRoot.n = 1;
+            root = newRoot;
+            return;
+        }
+
+        int n = parent.n;
+        int index = 0;
+        while (parent.children[index] != node) {
+            index++;
+        }
+        System.arraycopy(parent.keys, index, parent.keys, index + 1, n - index);
+        System.arraycopy(parent.children, index + 1, parent.children, index + 2, n - index);
+        parent.keys[index] = separator;
+        parent.children[index + 1] = sibling;
+        parent.n = n + 1;
+    }
+
+    private int count(VersionedNode node) {
+        // A racing writer can leave n out of step with the arrays; clamp it so reads stay in bounds.
+        return Math.max(0, Math.min(node.n, 2 * t - 1));
+    }
+}
@@ -0,0 +1,119 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Multithreaded stress run for {@link ConcurrentBTree}.
+ * <p>
+ * Usage: {@code java ConcurrentBTreeStress [threads] [operationsPerThread] [degree]}. Each writer owns
+ * the student IDs congruent to its number modulo the writer count and inserts, replaces and deletes them
+ * at random while tracking what it expects the tree to hold; readers look up random IDs at the same time
+ * and check that any record ID they see belongs to that key. At the end every writer's expected contents
+ * are compared with the tree. Exits with status 1 if anything is inconsistent.
+ */
+public class ConcurrentBTreeStress {
+
+    /**
+     * Every record ID written for a key is key * RECORD_MULTIPLIER + generation, so readers can check it.
+     */
+    private static final long RECORD_MULTIPLIER = 1_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Math.max(4, Runtime.getRuntime().availableProcessors());
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        int degree = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int writers = Math.max(1, threads / 2);
+        int readers = Math.max(1, threads - writers);
+        long keySpace = (long) operations * writers / 2;
+
+        ConcurrentBTree tree = new ConcurrentBTree(degree);
+        AtomicLong failures = new AtomicLong();
+        long[][] expected = new long[writers][];
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+
+        for (int w = 0; w < writers; w++) {
+            int writer = w;
+            workers.add(new Thread(() -> {
+                // Index i holds the record ID expected for key i * writers + writer, or -1 if absent.
+                long[] mine = new long[(int) (keySpace / writers) + 1];
+                Arrays.fill(mine, -1);
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                await(start);
+                for (int op = 0; op < operations; op++) {
+                    int slot = random.nextInt(mine.length);
+                    long key = (long) slot * writers + writer;
+                    if (random.nextInt(4) == 0) {
+                        boolean deleted = tree.delete(key);
+                        if (deleted != (mine[slot] != -1)) {
+                            failures.incrementAndGet();
+                        }
+                        mine[slot] = -1;
+                    } else {
+                        long recordId = key * RECORD_MULTIPLIER + op % RECORD_MULTIPLIER;
+                        tree.insert(key, recordId);
+                        mine[slot] = recordId;
+                    }
+                    if (tree.search(key) != mine[slot]) {
+                        failures.incrementAndGet();
+                    }
+                }
+                expected[writer] = mine;
+            }, "writer-" + w));
+        }
+        for (int r = 0; r < readers; r++) {
+            workers.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                await(start);
+                for (int op = 0; op < operations; op++) {
+                    long key = random.nextLong(keySpace);
+                    long recordId = tree.search(key);
+                    if (recordId != -1 && recordId / RECORD_MULTIPLIER != key) {
+                        failures.incrementAndGet();
+                    }
+                }
+            }, "reader-" + r));
+        }
+
+        workers.forEach(Thread::start);
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+
+        long live = 0;
+        for (int w = 0; w < writers; w++) {
+            long[] mine = expected[w];
+            for (int slot = 0; slot < mine.length; slot++) {
+                if (tree.search((long) slot * writers + w) != mine[slot]) {
+                    failures.incrementAndGet();
+                }
+                if (mine[slot] != -1) {
+                    live++;
+                }
+            }
+        }
+
+        long total = (long) operations * (writers + readers);
+        System.out.printf("%d writers, %d readers, degree %d: %d operations in %d ms (%.0f ops/s), %d keys live%n",
+                writers, readers, degree, total, elapsed / 1_000_000, total * 1e9 / elapsed, live);
+        if (failures.get() != 0) {
+            System.out.println("FAILED: " + failures.get() + " inconsistent results");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
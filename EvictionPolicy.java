@@ -0,0 +1,40 @@
+import java.util.function.IntPredicate;
+
+/**
+ * Chooses which frame of a {@link BufferPool} to reuse when a page has to be read and no frame is free.
+ * <p>
+ * Frames are numbered 0 to frames - 1. The pool reports every page access and asks for a victim among
+ * the frames that are not pinned.
+ */
+interface EvictionPolicy {
+
+    /**
+     * Called by the pool before any other method, and again whenever the pool drops every page; any
+     * history of the frames is void then.
+     *
+     * @param frames Number of frames in the pool.
+     */
+    void init(int frames);
+
+    /**
+     * A new page was read into the frame; any history of the page that was there before is void.
+     *
+     * @param frame The frame.
+     */
+    void loaded(int frame);
+
+    /**
+     * The page already in the frame was pinned again.
+     *
+     * @param frame The frame.
+     */
+    void accessed(int frame);
+
+    /**
+     * Pick the frame to evict.
+     *
+     * @param evictable Tells whether a frame may be evicted, i.e. is not pinned.
+     * @return The frame to evict, or -1 if no frame may be evicted.
+     */
+    int victim(IntPredicate evictable);
+}
@@ -0,0 +1,86 @@
+/**
+ * Strategy for locating a student ID inside the sorted keys of a single node.
+ * <p>
+ * Only the first {@code n} entries of {@code keys} are valid; the rest of the array is never read. Trees
+ * that pack many nodes into one array pass the offset of the node's keys as {@code from}.
+ */
+interface KeySearch {
+
+    /**
+     * Largest node size (2t - 1 keys) for which {@link #forDegree(int)} still picks the linear scan.
+     */
+    int LINEAR_MAX_KEYS = 32;
+
+    /**
+     * Find the index of the first key that is greater than or equal to the given key.
+     *
+     * @param keys The sorted keys of the node.
+     * @param n    The number of keys in use.
+     * @param key  The key to look for.
+     * @return The index in [0, n].
+     */
+    default int lowerBound(long[] keys, int n, long key) {
+        return lowerBound(keys, 0, n, key);
+    }
+
+    /**
+     * Find the index of the first key that is greater than or equal to the given key, among the n keys
+     * starting at from.
+     *
+     * @param keys The array holding the sorted keys of the node.
+     * @param from The index of the first key of the node.
+     * @param n    The number of keys in use.
+     * @param key  The key to look for.
+     * @return The index in [0, n], relative to from.
+     */
+    int lowerBound(long[] keys, int from, int n, long key);
+
+    /**
+     * Find the index of the first key that is strictly greater than the given key.
+     *
+     * @param keys The sorted keys of the node.
+     * @param n    The number of keys in use.
+     * @param key  The key to look for.
+     * @return The index in [0, n].
+     */
+    default int upperBound(long[] keys, int n, long key) {
+        return upperBound(keys, 0, n, key);
+    }
+
+    /**
+     * Find the index of the first key that is strictly greater than the given key, among the n keys
+     * starting at from.
+     *
+     * @param keys The array holding the sorted keys of the node.
+     * @param from The index of the first key of the node.
+     * @param n    The number of keys in use.
+     * @param key  The key to look for.
+     * @return The index in [0, n], relative to from.
+     */
+    int upperBound(long[] keys, int from, int n, long key);
+
+    /**
+     * Pick the default strategy for a tree of the given minimum degree: the linear scan while a node fits
+     * in a few cache lines, and the binary search for larger nodes.
+     *
+     * @param t The minimum degree of the tree.
+     * @return The strategy to use.
+     */
+    static KeySearch forDegree(int t) {
+        return 2 * t - 1 <= LINEAR_MAX_KEYS ? new LinearKeySearch() : new BinaryKeySearch();
+    }
+
+    /**
+     * Return the SIMD strategy if the JVM was started with {@code --add-modules jdk.incubator.vector},
+     * and the binary search otherwise.
+     *
+     * @return The strategy to use.
+     */
+    static KeySearch vectorized() {
+        try {
+            return (KeySearch) Class.forName("VectorKeySearch").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new BinaryKeySearch();
+        }
+    }
+}
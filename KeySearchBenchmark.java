@@ -0,0 +1,62 @@
+import java.util.Random;
+
+/**
+ * Compares the {@link KeySearch} strategies on a single node of growing size.
+ * <p>
+ * Run with {@code java --add-modules jdk.incubator.vector KeySearchBenchmark} to include the SIMD
+ * strategy. Prints the average time of one lowerBound call for each node size (2t - 1 keys) so that
+ * the cross-over points can be read off directly.
+ */
+public class KeySearchBenchmark {
+
+    private static final int QUERIES = 1 << 16;
+    private static final int ROUNDS = 200;
+
+    /**
+     * Results are summed into this field so that the JIT cannot drop the searches as dead code.
+     */
+    static long sink;
+
+    public static void main(String[] args) {
+        KeySearch vector = KeySearch.vectorized();
+        KeySearch[] strategies = {new LinearKeySearch(), new BinaryKeySearch(), vector};
+        String[] names = {"linear", "binary", vector instanceof BinaryKeySearch ? "vector(n/a)" : "vector"};
+
+        System.out.printf("%8s %8s %12s %12s %12s%n", "t", "keys", names[0], names[1], names[2]);
+        Random random = new Random(42);
+        for (int t = 2; t <= 1024; t *= 2) {
+            int n = 2 * t - 1;
+            long[] keys = new long[n];
+            long key = 0;
+            for (int i = 0; i < n; i++) {
+                key += 1 + random.nextInt(100);
+                keys[i] = key;
+            }
+            long[] queries = new long[QUERIES];
+            for (int i = 0; i < QUERIES; i++) {
+                queries[i] = Math.floorMod(random.nextLong(), key + 100);
+            }
+
+            System.out.printf("%8d %8d", t, n);
+            for (KeySearch strategy : strategies) {
+                // Warm up so that the JIT has compiled the strategy before it is measured.
+                run(strategy, keys, queries, ROUNDS / 4);
+                long start = System.nanoTime();
+                sink += run(strategy, keys, queries, ROUNDS);
+                double nanos = (System.nanoTime() - start) / (double) ((long) ROUNDS * QUERIES);
+                System.out.printf(" %9.2f ns", nanos);
+            }
+            System.out.println();
+        }
+    }
+
+    private static long run(KeySearch strategy, long[] keys, long[] queries, int rounds) {
+        long sum = 0;
+        for (int r = 0; r < rounds; r++) {
+            for (long query : queries) {
+                sum += strategy.lowerBound(keys, keys.length, query);
+            }
+        }
+        return sum;
+    }
+}
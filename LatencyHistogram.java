@@ -0,0 +1,81 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with HDR-style log-linear buckets.
+ * <p>
+ * Values below 128 ns get a bucket each; above that, every power of two is split into 64 buckets, so a
+ * bucket is never wider than 1/64 of its value and percentiles are accurate to about 1.5% over the whole
+ * range of a long. Recording is a single atomic increment and is safe from any thread.
+ */
+class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = SUB_BUCKETS / 2;
+    private static final int BUCKETS = (63 - SUB_BUCKET_BITS) * HALF + SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Record a number of operations that each took the given time.
+     *
+     * @param nanos Duration of one operation in nanoseconds.
+     * @param count Number of operations.
+     */
+    void record(long nanos, long count) {
+        long value = Math.max(0, nanos);
+        counts.getAndAdd(bucket(value), count);
+        sum.add(value * count);
+        max.accumulate(value);
+    }
+
+    /**
+     * @return Count, mean and percentiles of the values recorded so far.
+     */
+    LatencySummary summary() {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        return new LatencySummary(count, count == 0 ? 0 : (double) sum.sum() / count,
+                percentile(snapshot, count, 0.50), percentile(snapshot, count, 0.90),
+                percentile(snapshot, count, 0.99), percentile(snapshot, count, 0.999), max.get());
+    }
+
+    private static long percentile(long[] counts, long count, double fraction) {
+        // Report the highest value of the bucket that holds the requested rank.
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return highestValue(i);
+            }
+        }
+        return 0;
+    }
+
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        // Shift the value down until it lies in [HALF, SUB_BUCKETS); each shift is a new row of HALF buckets.
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return shift * HALF + (int) (value >>> shift);
+    }
+
+    private static long highestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / HALF - 1;
+        long subBucket = bucket - (long) shift * HALF;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,24 @@
+/**
+ * Scans the keys of a node from left to right. Cheapest for small nodes, where the whole key array
+ * sits in one or two cache lines and the branch predictor learns the loop exit.
+ */
+class LinearKeySearch implements KeySearch {
+
+    @Override
+    public int lowerBound(long[] keys, int from, int n, long key) {
+        int index = 0;
+        while (index < n && keys[from + index] < key) {
+            index++;
+        }
+        return index;
+    }
+
+    @Override
+    public int upperBound(long[] keys, int from, int n, long key) {
+        int index = 0;
+        while (index < n && keys[from + index] <= key) {
+            index++;
+        }
+        return index;
+    }
+}
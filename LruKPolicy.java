@@ -0,0 +1,66 @@
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * LRU-K eviction: evicts the frame whose K-th most recent access lies furthest in the past.
+ * <p>
+ * Frames with fewer than K accesses count as infinitely old and go first, least recently used among
+ * them. Pages that are only touched once by a scan are therefore evicted before the upper levels of the
+ * tree, which every descent touches again. History is kept per frame and dropped when the page leaves.
+ */
+class LruKPolicy implements EvictionPolicy {
+
+    private final int k;
+    /**
+     * Last K access times of each frame, most recent first. 0 means no access.
+     */
+    private long[][] history;
+    private long clock;
+
+    LruKPolicy(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("K must be at least 1: " + k);
+        }
+        this.k = k;
+    }
+
+    @Override
+    public void init(int frames) {
+        history = new long[frames][k];
+        clock = 0;
+    }
+
+    @Override
+    public void loaded(int frame) {
+        Arrays.fill(history[frame], 0);
+        accessed(frame);
+    }
+
+    @Override
+    public void accessed(int frame) {
+        long[] times = history[frame];
+        System.arraycopy(times, 0, times, 1, k - 1);
+        times[0] = ++clock;
+    }
+
+    @Override
+    public int victim(IntPredicate evictable) {
+        int best = -1;
+        long bestKth = Long.MAX_VALUE;
+        long bestLast = Long.MAX_VALUE;
+        for (int frame = 0; frame < history.length; frame++) {
+            if (!evictable.test(frame)) {
+                continue;
+            }
+            long[] times = history[frame];
+            long kth = times[k - 1];
+            // Smaller K-th access time means a larger backward K-distance; 0 is infinite.
+            if (kth < bestKth || (kth == bestKth && times[0] < bestLast)) {
+                best = frame;
+                bestKth = kth;
+                bestLast = times[0];
+            }
+        }
+        return best;
+    }
+}
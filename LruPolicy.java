@@ -0,0 +1,79 @@
+import java.util.function.IntPredicate;
+
+/**
+ * Least-recently-used eviction, kept as a doubly linked list of frames in access order.
+ */
+class LruPolicy implements EvictionPolicy {
+
+    private static final int NONE = -1;
+
+    /**
+     * Neighbours of each frame in the list, from least to most recently used.
+     */
+    private int[] prev;
+    private int[] next;
+    private int head;
+    private int tail;
+
+    @Override
+    public void init(int frames) {
+        prev = new int[frames];
+        next = new int[frames];
+        for (int frame = 0; frame < frames; frame++) {
+            prev[frame] = NONE;
+            next[frame] = NONE;
+        }
+        head = NONE;
+        tail = NONE;
+    }
+
+    @Override
+    public void loaded(int frame) {
+        accessed(frame);
+    }
+
+    @Override
+    public void accessed(int frame) {
+        if (frame == tail) {
+            return;
+        }
+        if (frame == head || prev[frame] != NONE) {
+            unlink(frame);
+        }
+        // Append the frame as the most recently used one.
+        prev[frame] = tail;
+        next[frame] = NONE;
+        if (tail != NONE) {
+            next[tail] = frame;
+        }
+        tail = frame;
+        if (head == NONE) {
+            head = frame;
+        }
+    }
+
+    @Override
+    public int victim(IntPredicate evictable) {
+        for (int frame = head; frame != NONE; frame = next[frame]) {
+            if (evictable.test(frame)) {
+                return frame;
+            }
+        }
+        return -1;
+    }
+
+    private void unlink(int frame) {
+        if (prev[frame] != NONE) {
+            next[prev[frame]] = next[frame];
+        } else {
+            head = next[frame];
+        }
+        if (next[frame] != NONE) {
+            prev[next[frame]] = prev[frame];
+        } else {
+            tail = prev[frame];
+        }
+        prev[frame] = NONE;
+        next[frame] = NONE;
+    }
+}
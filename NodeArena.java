@@ -0,0 +1,162 @@
+import java.util.Arrays;
+
+/**
+ * Pool of fixed-size node records, stored struct-of-arrays style in large slabs and addressed by int
+ * handles instead of object references.
+ * <p>
+ * Every record is {@code longsPerNode} consecutive longs in a long[] slab and {@code intsPerNode}
+ * consecutive ints in an int[] slab. A slab holds a power-of-two number of records, so a handle splits into
+ * a slab number and a slot with a shift and a mask. Slabs are never moved or resized once allocated, so an
+ * array returned by {@link #longs(int)} or {@link #ints(int)} stays valid while more records are allocated.
+ * <p>
+ * Freed records go on a free list, threaded through their first int, and are handed out again before the
+ * pool grows.
+ */
+class NodeArena {
+
+    /**
+     * Handle that refers to no record.
+     */
+    static final int NONE = -1;
+
+    /**
+     * Target number of longs per slab, 1 MB.
+     */
+    private static final int SLAB_LONGS = 1 << 17;
+
+    private final int longsPerNode;
+    private final int intsPerNode;
+    private final int slabShift;
+    private final int slabMask;
+
+    private long[][] longSlabs = new long[0][];
+    private int[][] intSlabs = new int[0][];
+    /**
+     * Handles below this have been handed out at least once.
+     */
+    private int allocated;
+    /**
+     * First record on the free list, or NONE.
+     */
+    private int free = NONE;
+    /**
+     * Number of records in use.
+     */
+    private int live;
+
+    NodeArena(int longsPerNode, int intsPerNode) {
+        if (longsPerNode < 1 || intsPerNode < 1) {
+            throw new IllegalArgumentException("A record needs at least one long and one int");
+        }
+        this.longsPerNode = longsPerNode;
+        this.intsPerNode = intsPerNode;
+        int nodesPerSlab = Integer.highestOneBit(Math.max(1, SLAB_LONGS / longsPerNode));
+        this.slabShift = Integer.numberOfTrailingZeros(nodesPerSlab);
+        this.slabMask = nodesPerSlab - 1;
+    }
+
+    /**
+     * Take a record from the free list, or from the end of the pool. Its ints are zero; its longs hold
+     * whatever the previous owner left there.
+     *
+     * @return The handle of the record.
+     */
+    int allocate() {
+        int handle;
+        if (free != NONE) {
+            handle = free;
+            free = ints(handle)[intOffset(handle)];
+            ints(handle)[intOffset(handle)] = 0;
+        } else {
+            handle = allocated;
+            if (handle < 0) {
+                throw new IllegalStateException("Node arena is full");
+            }
+            int slab = handle >>> slabShift;
+            if (slab == longSlabs.length) {
+                int slabs = Math.max(1, 2 * slab);
+                longSlabs = Arrays.copyOf(longSlabs, slabs);
+                intSlabs = Arrays.copyOf(intSlabs, slabs);
+            }
+            if (longSlabs[slab] == null) {
+                longSlabs[slab] = new long[(slabMask + 1) * longsPerNode];
+                intSlabs[slab] = new int[(slabMask + 1) * intsPerNode];
+            }
+            allocated++;
+        }
+        live++;
+        return handle;
+    }
+
+    /**
+     * Return a record to the pool. The handle must not be used again until it is handed out anew.
+     *
+     * @param handle The handle of the record.
+     */
+    void free(int handle) {
+        int[] ints = ints(handle);
+        int offset = intOffset(handle);
+        Arrays.fill(ints, offset, offset + intsPerNode, 0);
+        ints[offset] = free;
+        free = handle;
+        live--;
+    }
+
+    /**
+     * Drop every record and slab.
+     */
+    void clear() {
+        longSlabs = new long[0][];
+        intSlabs = new int[0][];
+        allocated = 0;
+        free = NONE;
+        live = 0;
+    }
+
+    /**
+     * @param handle The handle of a record.
+     * @return The slab holding the longs of the record, starting at {@link #longOffset(int)}.
+     */
+    long[] longs(int handle) {
+        return longSlabs[handle >>> slabShift];
+    }
+
+    /**
+     * @param handle The handle of a record.
+     * @return The index of the first long of the record in its slab.
+     */
+    int longOffset(int handle) {
+        return (handle & slabMask) * longsPerNode;
+    }
+
+    /**
+     * @param handle The handle of a record.
+     * @return The slab holding the ints of the record, starting at {@link #intOffset(int)}.
+     */
+    int[] ints(int handle) {
+        return intSlabs[handle >>> slabShift];
+    }
+
+    /**
+     * @param handle The handle of a record.
+     * @return The index of the first int of the record in its slab.
+     */
+    int intOffset(int handle) {
+        return (handle & slabMask) * intsPerNode;
+    }
+
+    /**
+     * @return The number of records in use.
+     */
+    int size() {
+        return live;
+    }
+
+    /**
+     * @return The bytes taken by the slabs allocated so far, without array headers.
+     */
+    long footprint() {
+        long slabs = ((long) allocated + slabMask) >>> slabShift;
+        return slabs * (slabMask + 1) * ((long) longsPerNode * Long.BYTES + (long) intsPerNode * Integer.BYTES);
+    }
+}
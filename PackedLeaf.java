@@ -0,0 +1,212 @@
+import java.util.Arrays;
+
+/**
+ * Compressed encoding of the keys and values of a leaf: frame of reference plus bit-packing.
+ * <p>
+ * Keys are stored as their distance from the smallest key and values as their distance from the
+ * smallest value, each packed with just enough bits for the largest distance. Student IDs that are close
+ * together and record IDs handed out by a counter then take a few bits each instead of 64. A single key or
+ * value is decoded with one or two word reads, so a leaf is searched in place, never decoded as a whole.
+ * <pre>
+ * word 0     key base (smallest key)
+ * word 1     value base (smallest value)
+ * word 2     n keys of keyBits bits each, packed from the lowest bit up
+ * then       n values of valueBits bits each, starting at the next whole word
+ * </pre>
+ * The bit widths are kept outside of the words, in a format int: keyBits | valueBits << 8.
+ */
+final class PackedLeaf {
+
+    /**
+     * Words in front of the packed keys.
+     */
+    static final int HEADER_WORDS = 2;
+
+    private PackedLeaf() {
+    }
+
+    /**
+     * Choose the bit widths for the given entries.
+     *
+     * @param keys   Array holding the keys, in ascending order.
+     * @param values Array holding the values, in the same order.
+     * @param from   Index of the first entry in both arrays.
+     * @param n      Number of entries.
+     * @return The format of the encoded entries.
+     */
+    static int format(long[] keys, long[] values, int from, int n) {
+        if (n == 0) {
+            return 0;
+        }
+        long min = values[from];
+        long max = values[from];
+        for (int i = from + 1; i < from + n; i++) {
+            min = Math.min(min, values[i]);
+            max = Math.max(max, values[i]);
+        }
+        return bits(keys[from], keys[from + n - 1]) | bits(min, max) << 8;
+    }
+
+    /**
+     * @param n      Number of entries.
+     * @param format Format of the entries.
+     * @return Number of words the encoded entries take.
+     */
+    static int words(int n, int format) {
+        return HEADER_WORDS + packedWords(n, keyBits(format)) + packedWords(n, valueBits(format));
+    }
+
+    /**
+     * Encode entries into a run of words, overwriting the words the encoding takes.
+     *
+     * @param keys   Array holding the keys, in ascending order.
+     * @param values Array holding the values, in the same order.
+     * @param from   Index of the first entry in both arrays.
+     * @param n      Number of entries.
+     * @param words  Array to encode into.
+     * @param base   Index of the first word of the encoding.
+     * @return The format of the encoded entries, as returned by {@link #format(long[], long[], int, int)}.
+     */
+    static int encode(long[] keys, long[] values, int from, int n, long[] words, int base) {
+        int format = format(keys, values, from, n);
+        int keyBits = keyBits(format);
+        int valueBits = valueBits(format);
+        Arrays.fill(words, base, base + words(n, format), 0);
+        if (n == 0) {
+            return format;
+        }
+        long keyBase = keys[from];
+        long valueBase = values[from];
+        for (int i = from + 1; i < from + n; i++) {
+            valueBase = Math.min(valueBase, values[i]);
+        }
+        words[base] = keyBase;
+        words[base + 1] = valueBase;
+        int valueStart = base + HEADER_WORDS + packedWords(n, keyBits);
+        for (int i = 0; i < n; i++) {
+            write(words, base + HEADER_WORDS, (long) i * keyBits, keyBits, keys[from + i] - keyBase);
+            write(words, valueStart, (long) i * valueBits, valueBits, values[from + i] - valueBase);
+        }
+        return format;
+    }
+
+    /**
+     * Decode all entries, e.g. to change them and encode them again.
+     *
+     * @param words  Array holding the encoding.
+     * @param base   Index of the first word of the encoding.
+     * @param format Format of the entries.
+     * @param n      Number of entries.
+     * @param keys   Array to decode the keys into, from index 0.
+     * @param values Array to decode the values into, from index 0.
+     */
+    static void decode(long[] words, int base, int format, int n, long[] keys, long[] values) {
+        int keyBits = keyBits(format);
+        int valueBits = valueBits(format);
+        int valueStart = base + HEADER_WORDS + packedWords(n, keyBits);
+        for (int i = 0; i < n; i++) {
+            keys[i] = words[base] + read(words, base + HEADER_WORDS, (long) i * keyBits, keyBits);
+            values[i] = words[base + 1] + read(words, valueStart, (long) i * valueBits, valueBits);
+        }
+    }
+
+    /**
+     * @return The key of entry i.
+     */
+    static long key(long[] words, int base, int format, int i) {
+        int keyBits = keyBits(format);
+        return words[base] + read(words, base + HEADER_WORDS, (long) i * keyBits, keyBits);
+    }
+
+    /**
+     * @return The value of entry i of n.
+     */
+    static long value(long[] words, int base, int format, int n, int i) {
+        int valueBits = valueBits(format);
+        int valueStart = base + HEADER_WORDS + packedWords(n, keyBits(format));
+        return words[base + 1] + read(words, valueStart, (long) i * valueBits, valueBits);
+    }
+
+    /**
+     * Find the index of the first key that is greater than or equal to the given key, decoding only the
+     * keys the binary search probes.
+     *
+     * @return The index in [0, n].
+     */
+    static int lowerBound(long[] words, int base, int format, int n, long key) {
+        int low = 0;
+        int high = n;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (key(words, base, format, mid) < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Find the index of the first key that is strictly greater than the given key, decoding only the
+     * keys the binary search probes.
+     *
+     * @return The index in [0, n].
+     */
+    static int upperBound(long[] words, int base, int format, int n, long key) {
+        int low = 0;
+        int high = n;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (key(words, base, format, mid) <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int keyBits(int format) {
+        return format & 0xFF;
+    }
+
+    private static int valueBits(int format) {
+        return format >>> 8;
+    }
+
+    private static int bits(long min, long max) {
+        // Bits needed for the largest distance from min; the subtraction may wrap, so read it unsigned.
+        return Long.SIZE - Long.numberOfLeadingZeros(max - min);
+    }
+
+    private static int packedWords(int n, int bits) {
+        return (int) (((long) n * bits + Long.SIZE - 1) / Long.SIZE);
+    }
+
+    private static long read(long[] words, int start, long bitPos, int bits) {
+        if (bits == 0) {
+            return 0;
+        }
+        int index = start + (int) (bitPos >>> 6);
+        int shift = (int) (bitPos & 63);
+        long value = words[index] >>> shift;
+        if (shift + bits > Long.SIZE) {
+            value |= words[index + 1] << (Long.SIZE - shift);
+        }
+        return bits == Long.SIZE ? value : value & ((1L << bits) - 1);
+    }
+
+    private static void write(long[] words, int start, long bitPos, int bits, long value) {
+        // The target bits must be zero.
+        if (bits == 0) {
+            return;
+        }
+        int index = start + (int) (bitPos >>> 6);
+        int shift = (int) (bitPos & 63);
+        words[index] |= value << shift;
+        if (shift + bits > Long.SIZE) {
+            words[index + 1] |= value >>> (Long.SIZE - shift);
+        }
+    }
+}
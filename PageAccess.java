@@ -0,0 +1,48 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * How {@link PagedBTree} reaches the pages of an index file.
+ * <p>
+ * Every {@link #pin(int)} must be matched by one {@link #unpin(int, boolean)}. A pinned page stays at the
+ * same buffer until it is unpinned; after that the buffer must not be used again.
+ */
+interface PageAccess {
+
+    /**
+     * Make the page available and keep it in memory until it is unpinned.
+     *
+     * @param pageId The page to access.
+     * @return A buffer over the page contents, read and written with absolute get/put calls.
+     */
+    ByteBuffer pin(int pageId);
+
+    /**
+     * Release a page pinned with {@link #pin(int)}.
+     *
+     * @param pageId The page to release.
+     * @param dirty  True if the page was modified while it was pinned.
+     */
+    void unpin(int pageId, boolean dirty);
+
+    /**
+     * Add a page to the end of the file. The new page is not pinned; pin it to fill it in.
+     *
+     * @return The ID of the new page. Its contents are undefined.
+     * @throws IOException If the file cannot grow.
+     */
+    int allocate() throws IOException;
+
+    /**
+     * Drop every page except the header, leaving an empty tree. Pages modified before are discarded, not
+     * written back, and page IDs are handed out again from the start. No page may be pinned.
+     */
+    void reset();
+
+    /**
+     * Write every modified page back to the file.
+     *
+     * @throws IOException If a page cannot be written.
+     */
+    void flush() throws IOException;
+}
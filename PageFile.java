@@ -0,0 +1,218 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A single index file made of fixed-size pages, accessed through memory-mapped segments.
+ * <p>
+ * Page 0 is the file header; every other page holds one B+Tree node. The file grows one segment at a
+ * time and segments are never remapped, so a buffer returned by {@link #page(int)} stays valid until the
+ * file is closed. Used as a {@link PageAccess} directly, pinning is free and paging is left to the
+ * operating system; a {@link BufferPool} instead copies pages in and out with {@link #read(int, ByteBuffer)}
+ * and {@link #write(int, ByteBuffer)}.
+ */
+class PageFile implements PageAccess, Closeable {
+
+    /**
+     * Page ID used for "no page", e.g. the root of an empty tree or the end of the leaf chain.
+     */
+    static final int NO_PAGE = -1;
+
+    private static final int MAGIC = 0x42545046; // "BTPF"
+    private static final int VERSION = 1;
+    /**
+     * Number of pages mapped together in one segment.
+     */
+    private static final int PAGES_PER_SEGMENT = 1024;
+
+    // Header layout in page 0.
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int PAGE_SIZE_OFFSET = 8;
+    private static final int PAGE_COUNT_OFFSET = 12;
+    private static final int ROOT_PAGE_OFFSET = 16;
+
+    private final FileChannel channel;
+    private final int pageSize;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final ByteBuffer header;
+
+    private PageFile(FileChannel channel, int pageSize) throws IOException {
+        this.channel = channel;
+        this.pageSize = pageSize;
+        mapSegment();
+        this.header = page(0);
+    }
+
+    /**
+     * Create a new, empty index file, replacing any file at that path.
+     *
+     * @param path     The index file.
+     * @param pageSize Size of each page in bytes, a power of two of at least 512 (e.g. 4096, 8192, 16384).
+     * @return The opened file.
+     * @throws IOException If the file cannot be created.
+     */
+    static PageFile create(Path path, int pageSize) throws IOException {
+        if (pageSize < 512 || Integer.bitCount(pageSize) != 1) {
+            throw new IllegalArgumentException("Page size must be a power of two of at least 512: " + pageSize);
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        PageFile file = new PageFile(channel, pageSize);
+        file.header.putInt(MAGIC_OFFSET, MAGIC);
+        file.header.putInt(VERSION_OFFSET, VERSION);
+        file.header.putInt(PAGE_SIZE_OFFSET, pageSize);
+        file.reset();
+        return file;
+    }
+
+    /**
+     * Open an existing index file.
+     *
+     * @param path The index file.
+     * @return The opened file.
+     * @throws IOException If the file cannot be read or is not an index file.
+     */
+    static PageFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer buffer = ByteBuffer.allocate(PAGE_COUNT_OFFSET);
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) {
+            // Keep reading until the fixed part of the header is in.
+        }
+        if (buffer.hasRemaining() || buffer.getInt(MAGIC_OFFSET) != MAGIC || buffer.getInt(VERSION_OFFSET) != VERSION) {
+            channel.close();
+            throw new IOException("Not a B+Tree index file: " + path);
+        }
+        PageFile file = new PageFile(channel, buffer.getInt(PAGE_SIZE_OFFSET));
+        while (file.segments.size() * PAGES_PER_SEGMENT < file.pageCount()) {
+            file.mapSegment();
+        }
+        return file;
+    }
+
+    int pageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @return Number of pages in use, including the header page.
+     */
+    int pageCount() {
+        return header.getInt(PAGE_COUNT_OFFSET);
+    }
+
+    int rootPage() {
+        return header.getInt(ROOT_PAGE_OFFSET);
+    }
+
+    void setRootPage(int pageId) {
+        header.putInt(ROOT_PAGE_OFFSET, pageId);
+    }
+
+    /**
+     * Return a buffer over the given page. Absolute get/put calls on it read and write the file directly.
+     *
+     * @param pageId The page to access.
+     * @return A buffer of {@link #pageSize()} bytes.
+     */
+    ByteBuffer page(int pageId) {
+        MappedByteBuffer segment = segments.get(pageId / PAGES_PER_SEGMENT);
+        return segment.slice((pageId % PAGES_PER_SEGMENT) * pageSize, pageSize);
+    }
+
+    /**
+     * Copy a page from the file into the buffer, without going through the mapping.
+     *
+     * @param pageId The page to read.
+     * @param dst    A buffer of {@link #pageSize()} bytes.
+     * @throws IOException If the page cannot be read.
+     */
+    void read(int pageId, ByteBuffer dst) throws IOException {
+        long offset = (long) pageId * pageSize;
+        dst.clear();
+        while (dst.hasRemaining() && channel.read(dst, offset + dst.position()) >= 0) {
+            // Positional reads may return fewer bytes than asked for.
+        }
+        dst.clear();
+    }
+
+    /**
+     * Copy a page from the buffer into the file, without going through the mapping.
+     *
+     * @param pageId The page to write.
+     * @param src    A buffer of {@link #pageSize()} bytes.
+     * @throws IOException If the page cannot be written.
+     */
+    void write(int pageId, ByteBuffer src) throws IOException {
+        long offset = (long) pageId * pageSize;
+        src.clear();
+        while (src.hasRemaining()) {
+            channel.write(src, offset + src.position());
+        }
+        src.clear();
+    }
+
+    @Override
+    public ByteBuffer pin(int pageId) {
+        return page(pageId);
+    }
+
+    @Override
+    public void unpin(int pageId, boolean dirty) {
+        // Mapped pages are written back by the operating system.
+    }
+
+    @Override
+    public void flush() {
+        force();
+    }
+
+    /**
+     * Add a page at the end of the file, mapping a new segment if needed.
+     *
+     * @return The ID of the new page. Its contents are undefined.
+     * @throws IOException If the file cannot grow.
+     */
+    @Override
+    public int allocate() throws IOException {
+        int pageId = pageCount();
+        if (pageId == segments.size() * PAGES_PER_SEGMENT) {
+            mapSegment();
+        }
+        header.putInt(PAGE_COUNT_OFFSET, pageId + 1);
+        return pageId;
+    }
+
+    @Override
+    public void reset() {
+        header.putInt(PAGE_COUNT_OFFSET, 1);
+        setRootPage(NO_PAGE);
+    }
+
+    /**
+     * Write all changes made through the mapped pages to the storage device.
+     */
+    void force() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.truncate((long) pageCount() * pageSize);
+        channel.close();
+    }
+
+    private void mapSegment() throws IOException {
+        long segmentSize = (long) PAGES_PER_SEGMENT * pageSize;
+        segments.add(channel.map(FileChannel.MapMode.READ_WRITE, segments.size() * segmentSize, segmentSize));
+    }
+}
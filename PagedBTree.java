@@ -0,0 +1,556 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * B+Tree whose nodes are pages of a {@link PageFile} rather than heap objects.
+ * <p>
+ * Each page holds one node: a small header, the sorted keys, and then either the record IDs (leaf) or
+ * the child page IDs (internal node). The minimum degree follows from the page size, so that a full node
+ * exactly fills a page. The algorithms are the same as in {@link BTree}.
+ * <pre>
+ * offset 0   leaf flag (byte)
+ * offset 4   number of keys (int)
+ * offset 8   next leaf page (int)
+ * offset 12  previous leaf page (int)
+ * offset 16  keys (long[maxKeys]), then values (long[maxKeys]) or children (int[maxKeys + 1])
+ * </pre>
+ */
+class PagedBTree implements Closeable {
+
+    private static final int LEAF_OFFSET = 0;
+    private static final int COUNT_OFFSET = 4;
+    private static final int NEXT_OFFSET = 8;
+    private static final int PREV_OFFSET = 12;
+    private static final int KEYS_OFFSET = 16;
+
+    private final PageFile file;
+    /**
+     * Where pages are pinned: the mapped file itself, or a {@link BufferPool} in front of it.
+     */
+    private final PageAccess pages;
+    /**
+     * Minimum degree of the tree; every node holds at most 2t - 1 keys.
+     */
+    private final int t;
+    /**
+     * Offset of the values (leaf) or children (internal node) in a page.
+     */
+    private final int payloadOffset;
+    /**
+     * Number of levels, 0 when the file holds no tree.
+     */
+    private int height;
+    /**
+     * Metrics that splits are reported to, or null.
+     */
+    private BTreeMetrics metrics;
+
+    PagedBTree(PageFile file) {
+        this(file, file);
+    }
+
+    PagedBTree(PageFile file, PageAccess pages) {
+        this.file = file;
+        this.pages = pages;
+        int maxKeys = (file.pageSize() - KEYS_OFFSET) / (2 * Long.BYTES);
+        this.t = (maxKeys + 1) / 2;
+        this.payloadOffset = KEYS_OFFSET + (2 * t - 1) * Long.BYTES;
+        // Every leaf is at the same depth, so the leftmost path gives the height.
+        for (int pageId = file.rootPage(); pageId != PageFile.NO_PAGE; height++) {
+            ByteBuffer page = pages.pin(pageId);
+            int childId = isLeaf(page) ? PageFile.NO_PAGE : child(page, 0);
+            pages.unpin(pageId, false);
+            pageId = childId;
+        }
+    }
+
+    int degree() {
+        return t;
+    }
+
+    int height() {
+        return height;
+    }
+
+    /**
+     * Report every later split to the given metrics.
+     *
+     * @param metrics The metrics.
+     */
+    void attach(BTreeMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Count the nodes on each level, reading every internal page once.
+     *
+     * @return The number of nodes on each level, leaves first.
+     */
+    long[] levelNodes() {
+        long[] nodesPerLevel = new long[height];
+        int[] level = file.rootPage() == PageFile.NO_PAGE ? new int[0] : new int[]{file.rootPage()};
+        for (int depth = height - 1; depth >= 0; depth--) {
+            nodesPerLevel[depth] = level.length;
+            if (depth == 0) {
+                break;
+            }
+            int size = 0;
+            int[] below = new int[level.length * 2 * t];
+            for (int pageId : level) {
+                ByteBuffer page = pages.pin(pageId);
+                for (int i = 0; i <= count(page); i++) {
+                    below[size++] = child(page, i);
+                }
+                pages.unpin(pageId, false);
+            }
+            level = Arrays.copyOf(below, size);
+        }
+        return nodesPerLevel;
+    }
+
+    /**
+     * Search for the record ID of the given student.
+     *
+     * @param studentId The student ID to search for.
+     * @return The record ID, or -1 if the student is not found.
+     */
+    long search(long studentId) {
+        int pageId = findLeaf(studentId);
+        if (pageId == PageFile.NO_PAGE) {
+            return -1;
+        }
+        ByteBuffer page = pages.pin(pageId);
+        int i = lowerBound(page, studentId);
+        long recordId = i < count(page) && key(page, i) == studentId ? value(page, i) : -1;
+        pages.unpin(pageId, false);
+        return recordId;
+    }
+
+    /**
+     * Insert a key-value pair, splitting full nodes on the way down.
+     *
+     * @param studentId The student ID.
+     * @param recordId  The record ID.
+     * @throws IOException If the index file cannot grow.
+     */
+    void insert(long studentId, long recordId) throws IOException {
+        int pageId = file.rootPage();
+        if (pageId == PageFile.NO_PAGE) {
+            pageId = newPage(true);
+            file.setRootPage(pageId);
+            height = 1;
+            if (metrics != null) {
+                metrics.grew();
+            }
+        }
+        ByteBuffer page = pages.pin(pageId);
+        boolean modified = false;
+        if (count(page) == 2 * t - 1) {
+            // If the root node is full, split it and create a new root
+            int newRootId = newPage(false);
+            ByteBuffer newRoot = pages.pin(newRootId);
+            setChild(newRoot, 0, pageId);
+            pages.unpin(pageId, false);
+            splitChild(newRoot, 0);
+            if (metrics != null) {
+                metrics.split(height - 1);
+                metrics.grew();
+            }
+            height++;
+            pageId = newRootId;
+            page = newRoot;
+            modified = true;
+            file.setRootPage(pageId);
+        }
+
+        int level = height - 1;
+        while (!isLeaf(page)) {
+            int i = upperBound(page, studentId);
+            int childId = child(page, i);
+            ByteBuffer child = pages.pin(childId);
+            boolean full = count(child) == 2 * t - 1;
+            pages.unpin(childId, false);
+            if (full) {
+                // If the child node is full, split it before descending
+                splitChild(page, i);
+                if (metrics != null) {
+                    metrics.split(level - 1);
+                }
+                modified = true;
+                if (studentId >= key(page, i)) {
+                    i++;
+                }
+                childId = child(page, i);
+            }
+            pages.unpin(pageId, modified);
+            pageId = childId;
+            page = pages.pin(pageId);
+            modified = false;
+            level--;
+        }
+
+        int n = count(page);
+        int i = upperBound(page, studentId);
+        for (int j = n; j > i; j--) {
+            setKey(page, j, key(page, j - 1));
+            setValue(page, j, value(page, j - 1));
+        }
+        setKey(page, i, studentId);
+        setValue(page, i, recordId);
+        setCount(page, n + 1);
+        pages.unpin(pageId, true);
+    }
+
+    /**
+     * Remove the record of the given student from its leaf.
+     *
+     * @param studentId The student ID to delete.
+     * @return True if the record was found and removed.
+     */
+    boolean delete(long studentId) {
+        int pageId = findLeaf(studentId);
+        if (pageId == PageFile.NO_PAGE) {
+            return false;
+        }
+        ByteBuffer page = pages.pin(pageId);
+        int n = count(page);
+        int index = lowerBound(page, studentId);
+        if (index == n || key(page, index) != studentId) {
+            pages.unpin(pageId, false);
+            return false;
+        }
+        for (int i = index; i < n - 1; i++) {
+            setKey(page, i, key(page, i + 1));
+            setValue(page, i, value(page, i + 1));
+        }
+        setCount(page, n - 1);
+        pages.unpin(pageId, true);
+        return true;
+    }
+
+    /**
+     * Replace the contents of the file with a tree built bottom-up from sorted keys.
+     *
+     * @param keys       The student IDs, in ascending order.
+     * @param values     The record IDs, in the same order.
+     * @param fillFactor Fraction of each node to fill, in (0, 1].
+     * @throws IOException If the index file cannot grow.
+     */
+    void bulkLoad(long[] keys, long[] values, double fillFactor) throws IOException {
+        pages.reset(); // Also drops any cached frames of the old pages
+        height = 0;
+        int count = keys.length;
+        if (count == 0) {
+            return;
+        }
+
+        // Leaf level: pack the sorted keys into linked leaves. Each leaf stays pinned until the next one
+        // exists, so that its next link can be filled in.
+        int leafKeys = Math.max(t - 1, Math.min(2 * t - 1, (int) Math.ceil(fillFactor * (2 * t - 1))));
+        int groups = BTree.levelGroups(count, leafKeys, t - 1);
+        int[] level = new int[groups];
+        long[] minKeys = new long[groups];
+        ByteBuffer previous = null;
+        int pos = 0;
+        for (int g = 0; g < groups; g++) {
+            int pageId = newPage(true);
+            ByteBuffer leaf = pages.pin(pageId);
+            int n = BTree.groupSize(count, groups, g);
+            for (int i = 0; i < n; i++) {
+                setKey(leaf, i, keys[pos + i]);
+                setValue(leaf, i, values[pos + i]);
+            }
+            setCount(leaf, n);
+            if (previous != null) {
+                leaf.putInt(PREV_OFFSET, level[g - 1]);
+                previous.putInt(NEXT_OFFSET, pageId);
+                pages.unpin(level[g - 1], true);
+            }
+            previous = leaf;
+            level[g] = pageId;
+            minKeys[g] = keys[pos];
+            pos += n;
+        }
+        pages.unpin(level[groups - 1], true);
+        height = 1;
+
+        // Internal levels: the separator in front of each child is the smallest key in its subtree.
+        int fanout = Math.max(t, Math.min(2 * t, (int) Math.ceil(fillFactor * 2 * t)));
+        while (level.length > 1) {
+            groups = BTree.levelGroups(level.length, fanout, t);
+            int[] parents = new int[groups];
+            long[] parentMinKeys = new long[groups];
+            int child = 0;
+            for (int g = 0; g < groups; g++) {
+                int pageId = newPage(false);
+                ByteBuffer parent = pages.pin(pageId);
+                int size = BTree.groupSize(level.length, groups, g);
+                parentMinKeys[g] = minKeys[child];
+                for (int j = 0; j < size; j++) {
+                    setChild(parent, j, level[child]);
+                    if (j > 0) {
+                        setKey(parent, j - 1, minKeys[child]);
+                    }
+                    child++;
+                }
+                setCount(parent, size - 1);
+                pages.unpin(pageId, true);
+                parents[g] = pageId;
+            }
+            level = parents;
+            minKeys = parentMinKeys;
+            height++;
+        }
+        file.setRootPage(level[0]);
+    }
+
+    /**
+     * Return the record IDs of all students with an ID in [lo, hi], following the leaf chain.
+     * Each leaf is pinned only while its matching record IDs are copied out.
+     *
+     * @param lo The lowest student ID to include.
+     * @param hi The highest student ID to include.
+     * @return The record IDs in ascending order of student ID.
+     */
+    LongStream rangeSearch(long lo, long hi) {
+        int first = findLeaf(lo);
+        if (first == PageFile.NO_PAGE) {
+            return LongStream.empty();
+        }
+        Spliterator.OfLong spliterator = new Spliterators.AbstractLongSpliterator(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE) {
+            private int nextLeaf = first;
+            private long[] buffer = new long[2 * t - 1];
+            private int index;
+            private int size;
+            private boolean done;
+
+            @Override
+            public boolean tryAdvance(LongConsumer action) {
+                while (index == size) {
+                    if (done || nextLeaf == PageFile.NO_PAGE) {
+                        return false;
+                    }
+                    fill();
+                }
+                action.accept(buffer[index++]);
+                return true;
+            }
+
+            private void fill() {
+                // Copy the matching record IDs of the next leaf and move on along the chain.
+                int pageId = nextLeaf;
+                ByteBuffer leaf = pages.pin(pageId);
+                int n = count(leaf);
+                int i = lowerBound(leaf, lo);
+                size = 0;
+                while (i < n && key(leaf, i) <= hi) {
+                    buffer[size++] = value(leaf, i++);
+                }
+                done = i < n;
+                nextLeaf = leaf.getInt(NEXT_OFFSET);
+                index = 0;
+                pages.unpin(pageId, false);
+            }
+        };
+        return StreamSupport.longStream(spliterator, false);
+    }
+
+    /**
+     * Pass every student ID to the given action in ascending order, following the leaf chain.
+     *
+     * @param action The action.
+     */
+    void forEachKey(LongConsumer action) {
+        int pageId = findLeaf(Long.MIN_VALUE);
+        while (pageId != PageFile.NO_PAGE) {
+            ByteBuffer leaf = pages.pin(pageId);
+            int n = count(leaf);
+            for (int i = 0; i < n; i++) {
+                action.accept(key(leaf, i));
+            }
+            int next = leaf.getInt(NEXT_OFFSET);
+            pages.unpin(pageId, false);
+            pageId = next;
+        }
+    }
+
+    /**
+     * @return All record IDs in ascending order of student ID.
+     */
+    List<Long> print() {
+        List<Long> listOfRecordID = new ArrayList<>();
+        rangeSearch(Long.MIN_VALUE, Long.MAX_VALUE).forEach(listOfRecordID::add);
+        return listOfRecordID;
+    }
+
+    /**
+     * @return The buffer pool in front of the file, or null if pages are accessed through the mapping.
+     */
+    BufferPool bufferPool() {
+        return pages instanceof BufferPool ? (BufferPool) pages : null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        pages.flush();
+        file.close();
+    }
+
+    private int findLeaf(long studentId) {
+        // Descend from the root to the leaf that covers the studentId, holding one pin at a time.
+        int pageId = file.rootPage();
+        if (pageId == PageFile.NO_PAGE) {
+            return pageId;
+        }
+        ByteBuffer page = pages.pin(pageId);
+        while (!isLeaf(page)) {
+            int childId = child(page, upperBound(page, studentId));
+            pages.unpin(pageId, false);
+            pageId = childId;
+            page = pages.pin(pageId);
+        }
+        pages.unpin(pageId, false);
+        return pageId;
+    }
+
+    private void splitChild(ByteBuffer parent, int childIndex) throws IOException {
+        // The parent must be pinned by the caller, who also marks it dirty.
+        int childId = child(parent, childIndex);
+        ByteBuffer child = pages.pin(childId);
+        boolean leaf = isLeaf(child);
+        int newChildId = newPage(leaf);
+        ByteBuffer newChild = pages.pin(newChildId);
+        long separator;
+
+        if (leaf) {
+            // The last t records move to the new leaf and its first key is copied up.
+            for (int j = 0; j < t; j++) {
+                setKey(newChild, j, key(child, j + t - 1));
+                setValue(newChild, j, value(child, j + t - 1));
+            }
+            setCount(newChild, t);
+            separator = key(newChild, 0);
+
+            int nextId = child.getInt(NEXT_OFFSET);
+            newChild.putInt(NEXT_OFFSET, nextId);
+            newChild.putInt(PREV_OFFSET, childId);
+            if (nextId != PageFile.NO_PAGE) {
+                pages.pin(nextId).putInt(PREV_OFFSET, newChildId);
+                pages.unpin(nextId, true);
+            }
+            child.putInt(NEXT_OFFSET, newChildId);
+        } else {
+            // The middle key moves up and the keys and children after it move to the new node.
+            for (int j = 0; j < t - 1; j++) {
+                setKey(newChild, j, key(child, j + t));
+            }
+            for (int j = 0; j < t; j++) {
+                setChild(newChild, j, child(child, j + t));
+            }
+            setCount(newChild, t - 1);
+            separator = key(child, t - 1);
+        }
+        setCount(child, t - 1);
+        pages.unpin(childId, true);
+        pages.unpin(newChildId, true);
+
+        int n = count(parent);
+        for (int j = n; j >= childIndex + 1; j--) {
+            setChild(parent, j + 1, child(parent, j));
+        }
+        for (int j = n - 1; j >= childIndex; j--) {
+            setKey(parent, j + 1, key(parent, j));
+        }
+        setKey(parent, childIndex, separator);
+        setChild(parent, childIndex + 1, newChildId);
+        setCount(parent, n + 1);
+    }
+
+    private int newPage(boolean leaf) throws IOException {
+        // Allocate and initialise a page; it is returned unpinned.
+        int pageId = pages.allocate();
+        ByteBuffer page = pages.pin(pageId);
+        page.put(LEAF_OFFSET, (byte) (leaf ? 1 : 0));
+        setCount(page, 0);
+        page.putInt(NEXT_OFFSET, PageFile.NO_PAGE);
+        page.putInt(PREV_OFFSET, PageFile.NO_PAGE);
+        pages.unpin(pageId, true);
+        return pageId;
+    }
+
+    private int lowerBound(ByteBuffer page, long key) {
+        // Binary search for the first key that is greater than or equal to the given key.
+        int low = 0;
+        int high = count(page);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (key(page, mid) < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int upperBound(ByteBuffer page, long key) {
+        // Binary search for the first key that is strictly greater than the given key.
+        int low = 0;
+        int high = count(page);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (key(page, mid) <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static boolean isLeaf(ByteBuffer page) {
+        return page.get(LEAF_OFFSET) != 0;
+    }
+
+    private static int count(ByteBuffer page) {
+        return page.getInt(COUNT_OFFSET);
+    }
+
+    private static void setCount(ByteBuffer page, int n) {
+        page.putInt(COUNT_OFFSET, n);
+    }
+
+    private static long key(ByteBuffer page, int i) {
+        return page.getLong(KEYS_OFFSET + i * Long.BYTES);
+    }
+
+    private static void setKey(ByteBuffer page, int i, long key) {
+        page.putLong(KEYS_OFFSET + i * Long.BYTES, key);
+    }
+
+    private long value(ByteBuffer page, int i) {
+        return page.getLong(payloadOffset + i * Long.BYTES);
+    }
+
+    private void setValue(ByteBuffer page, int i, long value) {
+        page.putLong(payloadOffset + i * Long.BYTES, value);
+    }
+
+    private int child(ByteBuffer page, int i) {
+        return page.getInt(payloadOffset + i * Integer.BYTES);
+    }
+
+    private void setChild(ByteBuffer page, int i, int pageId) {
+        page.putInt(payloadOffset + i * Integer.BYTES, pageId);
+    }
+}
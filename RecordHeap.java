@@ -0,0 +1,278 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Binary file of fixed-width student records, addressed by recordId.
+ * <p>
+ * Every record takes {@link #RECORD_SIZE} bytes, so record r starts at byte r * RECORD_SIZE and a full
+ * row is fetched with one positional read. Records are grouped in pages of {@link #PAGE_SIZE} bytes:
+ * recordId / {@link #SLOTS_PER_PAGE} is the page and recordId % {@link #SLOTS_PER_PAGE} the slot in it.
+ * <pre>
+ * offset 0    live flag (byte), 0 once the record is deleted
+ * offset 4    age (int)
+ * offset 8    studentId (long)
+ * offset 16   studentName: length (byte) + up to 47 bytes UTF-8
+ * offset 64   major: length (byte) + up to 47 bytes UTF-8
+ * offset 112  level: length (byte) + up to 15 bytes UTF-8
+ * </pre>
+ * A student with a longer field is refused with an {@link IOException}. Slots of deleted records are
+ * reused by later appends.
+ */
+class RecordHeap implements Closeable {
+
+    static final int RECORD_SIZE = 128;
+    static final int PAGE_SIZE = 4096;
+    static final int SLOTS_PER_PAGE = PAGE_SIZE / RECORD_SIZE;
+
+    private static final int LIVE_OFFSET = 0;
+    private static final int AGE_OFFSET = 4;
+    private static final int STUDENT_ID_OFFSET = 8;
+    private static final int NAME_OFFSET = 16;
+    private static final int NAME_FIELD = 48;
+    private static final int MAJOR_OFFSET = 64;
+    private static final int MAJOR_FIELD = 48;
+    private static final int LEVEL_OFFSET = 112;
+    private static final int LEVEL_FIELD = 16;
+
+    private final FileChannel channel;
+    /**
+     * Number of slots in the file, live or not.
+     */
+    private long slots;
+    /**
+     * Slots of deleted records, reused before the file grows.
+     */
+    private final Deque<Long> freeSlots = new ArrayDeque<>();
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+
+    private RecordHeap(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.slots = channel.size() / RECORD_SIZE;
+        // Collect the slots of deleted records in one sequential pass.
+        forEachSlot((recordId, page) -> {
+            if (page.get(page.position() + LIVE_OFFSET) == 0) {
+                freeSlots.add(recordId);
+            }
+        });
+    }
+
+    /**
+     * Open a record file, creating it if needed.
+     *
+     * @param path The record file.
+     * @return The opened file.
+     * @throws IOException If the file cannot be opened.
+     */
+    static RecordHeap open(Path path) throws IOException {
+        return new RecordHeap(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE));
+    }
+
+    /**
+     * @return True if the file holds no records, live or deleted.
+     */
+    boolean isEmpty() {
+        return slots == 0;
+    }
+
+    /**
+     * Store a student, reusing the slot of a deleted record if there is one.
+     *
+     * @param student The student to store. Its recordId is ignored.
+     * @return The recordId of the stored row.
+     * @throws IOException If a field of the student does not fit in its record, or the record cannot be
+     *                     written.
+     */
+    long append(Student student) throws IOException {
+        record.clear();
+        encode(student, record);
+        // Only a record that fits takes a slot.
+        long recordId = freeSlots.isEmpty() ? slots++ : freeSlots.poll();
+        write(record, recordId * RECORD_SIZE);
+        return recordId;
+    }
+
+    /**
+     * Store many students at the end of the file with one large write, and set their recordIds. Either
+     * all of them are stored or, if one fails, none.
+     *
+     * @param students The students to store.
+     * @throws IOException If a field of a student does not fit in its record, or the records cannot be
+     *                     written.
+     */
+    void appendAll(List<Student> students) throws IOException {
+        ByteBuffer batch = ByteBuffer.allocate(SLOTS_PER_PAGE * RECORD_SIZE * 64);
+        long position = slots * RECORD_SIZE;
+        long next = slots;
+        try {
+            for (Student student : students) {
+                if (!batch.hasRemaining()) {
+                    batch.flip();
+                    position += write(batch, position);
+                    batch.clear();
+                }
+                encode(student, batch.slice(batch.position(), RECORD_SIZE));
+                batch.position(batch.position() + RECORD_SIZE);
+                student.recordId = next++;
+            }
+            batch.flip();
+            write(batch, position);
+        } catch (IOException e) {
+            // Drop the batches already written, or the next open would count them as records.
+            channel.truncate(slots * RECORD_SIZE);
+            throw e;
+        }
+        slots = next;
+    }
+
+    /**
+     * Fetch a student with one positional read.
+     *
+     * @param recordId The recordId returned by {@link #append(Student)}.
+     * @return The student, or null if there is no live record with that recordId.
+     * @throws IOException If the record cannot be read.
+     */
+    Student read(long recordId) throws IOException {
+        if (recordId < 0 || recordId >= slots) {
+            return null;
+        }
+        record.clear();
+        long position = recordId * RECORD_SIZE;
+        while (record.hasRemaining() && channel.read(record, position + record.position()) >= 0) {
+            // Positional reads may return fewer bytes than asked for.
+        }
+        return record.get(LIVE_OFFSET) != 0 ? decode(record, 0, recordId) : null;
+    }
+
+    /**
+     * Mark a record as deleted; its slot is reused by a later append. A record that is already deleted
+     * is left alone, so its slot is not handed out twice.
+     *
+     * @param recordId The recordId of the record to delete.
+     * @throws IOException If the record cannot be read or written.
+     */
+    void delete(long recordId) throws IOException {
+        if (recordId < 0 || recordId >= slots) {
+            return;
+        }
+        ByteBuffer flag = ByteBuffer.allocate(1);
+        long position = recordId * RECORD_SIZE + LIVE_OFFSET;
+        while (flag.hasRemaining() && channel.read(flag, position) >= 0) {
+            // Positional reads may return fewer bytes than asked for.
+        }
+        if (flag.get(0) == 0) {
+            return;
+        }
+        flag.clear();
+        flag.put(0, (byte) 0);
+        write(flag, position);
+        freeSlots.add(recordId);
+    }
+
+    /**
+     * Visit every live record in recordId order, reading the file sequentially.
+     *
+     * @param action Called with each student; its recordId is set.
+     * @throws IOException If the file cannot be read.
+     */
+    void forEach(Consumer<Student> action) throws IOException {
+        forEachSlot((recordId, page) -> {
+            int offset = page.position();
+            if (page.get(offset + LIVE_OFFSET) != 0) {
+                action.accept(decode(page, offset, recordId));
+            }
+        });
+    }
+
+    /**
+     * Force every record to disk and close the file.
+     *
+     * @throws IOException If the records cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.force(false);
+        channel.close();
+    }
+
+    private interface SlotVisitor {
+        /**
+         * @param recordId The slot.
+         * @param page     A buffer positioned at the start of the slot.
+         */
+        void visit(long recordId, ByteBuffer page) throws IOException;
+    }
+
+    private void forEachSlot(SlotVisitor visitor) throws IOException {
+        ByteBuffer pages = ByteBuffer.allocate(PAGE_SIZE * 64);
+        long recordId = 0;
+        while (recordId < slots) {
+            pages.clear();
+            long position = recordId * RECORD_SIZE;
+            while (pages.hasRemaining() && channel.read(pages, position + pages.position()) > 0) {
+                // Fill the buffer or reach the end of the file.
+            }
+            int records = pages.position() / RECORD_SIZE;
+            if (records == 0) {
+                break;
+            }
+            for (int i = 0; i < records && recordId < slots; i++, recordId++) {
+                pages.position(i * RECORD_SIZE);
+                visitor.visit(recordId, pages);
+            }
+        }
+    }
+
+    private static void encode(Student student, ByteBuffer buffer) throws IOException {
+        // Writes one record at absolute offsets 0 to RECORD_SIZE of the buffer.
+        for (int i = 0; i < RECORD_SIZE; i++) {
+            buffer.put(i, (byte) 0);
+        }
+        buffer.put(LIVE_OFFSET, (byte) 1);
+        buffer.putInt(AGE_OFFSET, student.age);
+        buffer.putLong(STUDENT_ID_OFFSET, student.studentId);
+        putString(buffer, NAME_OFFSET, NAME_FIELD, student.studentName);
+        putString(buffer, MAJOR_OFFSET, MAJOR_FIELD, student.major);
+        putString(buffer, LEVEL_OFFSET, LEVEL_FIELD, student.level);
+    }
+
+    private static Student decode(ByteBuffer buffer, int offset, long recordId) {
+        return new Student(buffer.getLong(offset + STUDENT_ID_OFFSET), buffer.getInt(offset + AGE_OFFSET),
+                getString(buffer, offset + NAME_OFFSET), getString(buffer, offset + MAJOR_OFFSET),
+                getString(buffer, offset + LEVEL_OFFSET), recordId);
+    }
+
+    private static void putString(ByteBuffer buffer, int offset, int field, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length >= field) {
+            throw new IOException("'" + value + "' does not fit in " + (field - 1) + " bytes");
+        }
+        buffer.put(offset, (byte) bytes.length);
+        buffer.put(offset + 1, bytes);
+    }
+
+    private static String getString(ByteBuffer buffer, int offset) {
+        int length = buffer.get(offset) & 0xFF;
+        byte[] bytes = new byte[length];
+        buffer.get(offset + 1, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int write(ByteBuffer buffer, long position) throws IOException {
+        // Write the buffer from its position to its limit.
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        return written;
+    }
+}
@@ -0,0 +1,258 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Secondary indexes on the major, level and age of the students, next to the primary {@link BTree}.
+ * <p>
+ * Every indexed student gets a row number; freed rows are reused. Major and level have few distinct
+ * values, so each value is given a small code and a bitmap of the rows that have it. Age is kept in an
+ * ordered index, an {@link ArenaBTree} keyed by (age, row), so an age range is one range scan. A query
+ * starts from the smallest bitmap among its equality conditions and intersects the others into it; the
+ * age range is then checked row by row, or read from the ordered index when there is no equality
+ * condition to start from.
+ */
+class SecondaryIndexes {
+
+    private static final int DEGREE = 32;
+
+    private final Dictionary majors = new Dictionary();
+    private final Dictionary levels = new Dictionary();
+    /**
+     * (age << 32 | row) to row, in age order.
+     */
+    private final ArenaBTree ages = new ArenaBTree(DEGREE);
+    /**
+     * studentId to row.
+     */
+    private final ArenaBTree rows = new ArenaBTree(DEGREE);
+
+    /**
+     * Columns of the indexed students, by row.
+     */
+    private long[] studentIds = new long[64];
+    private int[] majorCodes = new int[64];
+    private int[] levelCodes = new int[64];
+    private int[] studentAges = new int[64];
+    /**
+     * Rows in use, and rows freed by deletes that can be handed out again.
+     */
+    private final BitSet live = new BitSet();
+    private int[] freeRows = new int[16];
+    private int freeCount;
+    private int rowCount;
+
+    /**
+     * Index a student.
+     *
+     * @param student The student.
+     */
+    void add(Student student) {
+        int row;
+        if (freeCount > 0) {
+            row = freeRows[--freeCount];
+        } else {
+            row = rowCount++;
+            if (row == studentIds.length) {
+                int capacity = 2 * row;
+                studentIds = Arrays.copyOf(studentIds, capacity);
+                majorCodes = Arrays.copyOf(majorCodes, capacity);
+                levelCodes = Arrays.copyOf(levelCodes, capacity);
+                studentAges = Arrays.copyOf(studentAges, capacity);
+            }
+        }
+        studentIds[row] = student.studentId;
+        majorCodes[row] = majors.add(student.major, row);
+        levelCodes[row] = levels.add(student.level, row);
+        studentAges[row] = student.age;
+        ages.insert(ageKey(student.age, row), row);
+        rows.insert(student.studentId, row);
+        live.set(row);
+    }
+
+    /**
+     * Remove a student from the indexes.
+     *
+     * @param studentId The student ID.
+     * @return True if the student was indexed.
+     */
+    boolean remove(long studentId) {
+        long found = rows.search(studentId);
+        if (found == -1) {
+            return false;
+        }
+        int row = (int) found;
+        rows.delete(studentId);
+        ages.delete(ageKey(studentAges[row], row));
+        majors.remove(majorCodes[row], row);
+        levels.remove(levelCodes[row], row);
+        live.clear(row);
+        if (freeCount == freeRows.length) {
+            freeRows = Arrays.copyOf(freeRows, 2 * freeCount);
+        }
+        freeRows[freeCount++] = row;
+        return true;
+    }
+
+    /**
+     * Remove every student from the indexes.
+     */
+    void clear() {
+        majors.clear();
+        levels.clear();
+        ages.bulkLoad(new long[0], new long[0], 1);
+        rows.bulkLoad(new long[0], new long[0], 1);
+        live.clear();
+        freeCount = 0;
+        rowCount = 0;
+    }
+
+    /**
+     * @return The number of indexed students.
+     */
+    int size() {
+        return live.cardinality();
+    }
+
+    /**
+     * Find the students that meet all of the given conditions.
+     *
+     * @param major  The major to match, or null for any major.
+     * @param level  The level to match, or null for any level.
+     * @param minAge The lowest age to include.
+     * @param maxAge The highest age to include.
+     * @return The student IDs in ascending order.
+     */
+    long[] find(String major, String level, int minAge, int maxAge) {
+        BitSet matches = match(major, level, minAge, maxAge);
+        long[] found = new long[matches.cardinality()];
+        int i = 0;
+        for (int row = matches.nextSetBit(0); row >= 0; row = matches.nextSetBit(row + 1)) {
+            found[i++] = studentIds[row];
+        }
+        Arrays.sort(found);
+        return found;
+    }
+
+    /**
+     * Count the students that meet all of the given conditions, see {@link #find}.
+     *
+     * @return The number of matching students.
+     */
+    int count(String major, String level, int minAge, int maxAge) {
+        return match(major, level, minAge, maxAge).cardinality();
+    }
+
+    /**
+     * @return The majors of the indexed students.
+     */
+    List<String> majors() {
+        return majors.values();
+    }
+
+    /**
+     * @return The levels of the indexed students.
+     */
+    List<String> levels() {
+        return levels.values();
+    }
+
+    private BitSet match(String major, String level, int minAge, int maxAge) {
+        if (minAge > maxAge) {
+            return new BitSet();
+        }
+        BitSet majorRows = major != null ? majors.rows(major) : null;
+        BitSet levelRows = level != null ? levels.rows(level) : null;
+        if ((major != null && majorRows == null) || (level != null && levelRows == null)) {
+            return new BitSet(); // A value no student has
+        }
+        boolean anyAge = minAge == Integer.MIN_VALUE && maxAge == Integer.MAX_VALUE;
+
+        if (majorRows == null && levelRows == null) {
+            if (anyAge) {
+                return (BitSet) live.clone();
+            }
+            // Only an age range: read it from the ordered index.
+            BitSet matches = new BitSet(rowCount);
+            ages.rangeSearch(ageKey(minAge, 0), ageKey(maxAge, Integer.MAX_VALUE)).forEach(row -> matches.set((int) row));
+            return matches;
+        }
+
+        // Start from the smaller bitmap and intersect the other one into it.
+        BitSet matches;
+        if (majorRows == null || (levelRows != null && levelRows.cardinality() < majorRows.cardinality())) {
+            matches = (BitSet) levelRows.clone();
+            if (majorRows != null) {
+                matches.and(majorRows);
+            }
+        } else {
+            matches = (BitSet) majorRows.clone();
+            if (levelRows != null) {
+                matches.and(levelRows);
+            }
+        }
+        if (!anyAge) {
+            for (int row = matches.nextSetBit(0); row >= 0; row = matches.nextSetBit(row + 1)) {
+                if (studentAges[row] < minAge || studentAges[row] > maxAge) {
+                    matches.clear(row);
+                }
+            }
+        }
+        return matches;
+    }
+
+    private static long ageKey(int age, int row) {
+        // Orders by age first; rows are never negative, so they fill the low half without a sign.
+        return (long) age << 32 | row;
+    }
+
+    /**
+     * Codes for the distinct values of one column, and a bitmap of the rows with each value.
+     */
+    private static final class Dictionary {
+
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+        private final List<BitSet> rows = new ArrayList<>();
+
+        int add(String value, int row) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+                rows.add(new BitSet());
+            }
+            rows.get(code).set(row);
+            return code;
+        }
+
+        void remove(int code, int row) {
+            rows.get(code).clear(row);
+        }
+
+        BitSet rows(String value) {
+            Integer code = codes.get(value);
+            return code != null ? rows.get(code) : null;
+        }
+
+        List<String> values() {
+            List<String> present = new ArrayList<>();
+            for (int code = 0; code < values.size(); code++) {
+                if (!rows.get(code).isEmpty()) {
+                    present.add(values.get(code));
+                }
+            }
+            return present;
+        }
+
+        void clear() {
+            codes.clear();
+            values.clear();
+            rows.clear();
+        }
+    }
+}
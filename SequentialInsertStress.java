@@ -0,0 +1,58 @@
+/**
+ * Leaf occupancy check for sequential inserts into {@link BTree}.
+ * <p>
+ * Usage: {@code java SequentialInsertStress [students] [degree...]}. For each degree (16 and 64 by
+ * default), the given number of ascending student IDs is inserted one by one, every ID is searched for,
+ * and the fill factor of the leaves is read with {@link BTree#occupancy()}. Splits on the right edge keep
+ * {@link BTree#APPEND_SPLIT_RATIO} of a full leaf, rounded down and leaving at least one record for the
+ * new leaf, so the leaves must end up about that full. Prints the fill of every level and exits with
+ * status 1 if a search misses or the leaves are emptier than that.
+ */
+public class SequentialInsertStress {
+
+    /**
+     * How far the leaf fill may stay below the split point, for the last leaf that is not full yet.
+     */
+    private static final double SLACK = 0.02;
+
+    public static void main(String[] args) {
+        int students = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int[] degrees = {16, 64};
+        if (args.length > 1) {
+            degrees = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                degrees[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+        long failures = 0;
+
+        for (int degree : degrees) {
+            BTree tree = new BTree(degree);
+            for (long id = 1; id <= students; id++) {
+                tree.insert(new Student(id, 20, "Student", "Major", "Level", id));
+            }
+            for (long id = 1; id <= students; id++) {
+                if (tree.search(id) != id) {
+                    failures++;
+                }
+            }
+
+            int capacity = 2 * degree - 1;
+            int kept = Math.min(capacity - 1, (int) (BTree.APPEND_SPLIT_RATIO * capacity));
+            double[] fill = tree.occupancy();
+            if (fill.length == 0 || fill[0] < (double) kept / capacity - SLACK) {
+                failures++;
+            }
+            StringBuilder levels = new StringBuilder();
+            for (int level = 0; level < fill.length; level++) {
+                levels.append(level == 0 ? "" : ", ").append(String.format("%.3f", fill[level]));
+            }
+            System.out.printf("degree=%d students=%d: fill by level, leaves first [%s]%n", degree, students, levels);
+        }
+
+        System.out.println(failures == 0 ? "OK" : "FAILED: " + failures + " failures");
+        if (failures != 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,445 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+/**
+ * Forest of independent in-memory {@link BTree}s, each owning one range of student IDs.
+ * <p>
+ * A sorted array of split points routes every student ID to its shard: shard i holds the IDs in
+ * [splits[i - 1], splits[i]). Each shard has its own read-write lock, so operations on different shards
+ * never wait for each other and searches on the same shard run side by side. There is no lock over the
+ * whole forest: an operation reads the current layout (split points and shards), locks its shard and
+ * starts over if the layout was replaced in the meantime. Bulk loads build the shards in parallel, and
+ * range searches fan out over the shards they overlap in a fork-join task that concatenates the results,
+ * which are already in order since the shards are.
+ * <p>
+ * Once the largest shard holds more than the smallest by {@link #SKEW_RATIO} times the average, the split
+ * points are moved to the quantiles of the current student IDs and every shard is rebuilt from the
+ * redistributed entries, in parallel. A rebalance holds every shard lock while it runs, but takes O(n)
+ * work once per O(n / shards) skewed inserts.
+ */
+class ShardedBTree {
+
+    /**
+     * Rebalance once the largest and smallest shard differ by this many times the average number of records.
+     */
+    static final double SKEW_RATIO = 1.0;
+    /**
+     * Below this many records per shard on average, skew is left alone.
+     */
+    private static final long MIN_REBALANCE_RECORDS = 1024;
+    /**
+     * A shard checks for skew each time its size reaches a multiple of this, not on every change.
+     */
+    private static final long SKEW_CHECK_INTERVAL = 256;
+    /**
+     * Distance between two shard sizes in the size array: 128 bytes, so that shards updated by
+     * different cores never share a cache line or an adjacent-line prefetch pair.
+     */
+    private static final int SIZE_STRIDE = 16;
+
+    /**
+     * Minimum degree of every shard.
+     */
+    private final int t;
+    /**
+     * Pool that bulk loads, rebalances and range searches run in.
+     */
+    private final ForkJoinPool pool;
+    /**
+     * Current split points and shards. Only replaced while every shard lock is held.
+     */
+    private volatile Layout layout;
+    /**
+     * One lock per shard position; they outlive the shards, which a rebalance replaces.
+     */
+    private final ReentrantReadWriteLock[] locks;
+    /**
+     * Number of records in each shard, SIZE_STRIDE slots apart.
+     */
+    private final AtomicLongArray sizes;
+
+    /**
+     * Create an empty forest. Until the first bulk load or rebalance every student ID routes to the
+     * first shard.
+     *
+     * @param shardCount Number of shards, e.g. the number of cores.
+     * @param t          Minimum degree of every shard.
+     */
+    ShardedBTree(int shardCount, int t) {
+        this(shardCount, t, ForkJoinPool.commonPool());
+    }
+
+    ShardedBTree(int shardCount, int t, ForkJoinPool pool) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be at least 1: " + shardCount);
+        }
+        this.t = t;
+        this.pool = pool;
+        long[] splits = new long[shardCount - 1];
+        Arrays.fill(splits, Long.MAX_VALUE);
+        BTree[] shards = new BTree[shardCount];
+        this.locks = new ReentrantReadWriteLock[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new BTree(t);
+            locks[i] = new ReentrantReadWriteLock();
+        }
+        this.layout = new Layout(splits, shards);
+        this.sizes = new AtomicLongArray(shardCount * SIZE_STRIDE);
+    }
+
+    /**
+     * @return The number of shards.
+     */
+    int shardCount() {
+        return locks.length;
+    }
+
+    /**
+     * @return The number of records in each shard.
+     */
+    long[] shardSizes() {
+        long[] result = new long[locks.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = sizes.get(i * SIZE_STRIDE);
+        }
+        return result;
+    }
+
+    /**
+     * @return The total number of records.
+     */
+    long size() {
+        long total = 0;
+        for (int i = 0; i < locks.length; i++) {
+            total += sizes.get(i * SIZE_STRIDE);
+        }
+        return total;
+    }
+
+    /**
+     * Search for a student record with the given studentId.
+     *
+     * @param studentId The student ID to search for.
+     * @return The record ID associated with the student, or -1 if the student is not found.
+     */
+    long search(long studentId) {
+        while (true) {
+            Layout current = layout;
+            int shard = current.shardOf(studentId);
+            ReentrantReadWriteLock.ReadLock lock = locks[shard].readLock();
+            lock.lock();
+            try {
+                if (current == layout) {
+                    return current.shards[shard].search(studentId);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Insert a new student record into the shard that owns its studentId.
+     *
+     * @param student The student record to insert.
+     */
+    void insert(Student student) {
+        long size;
+        while (true) {
+            Layout current = layout;
+            int shard = current.shardOf(student.studentId);
+            ReentrantReadWriteLock.WriteLock lock = locks[shard].writeLock();
+            lock.lock();
+            try {
+                if (current == layout) {
+                    current.shards[shard].insert(student);
+                    size = sizes.incrementAndGet(shard * SIZE_STRIDE);
+                    break;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (size % SKEW_CHECK_INTERVAL == 0 && skewed()) {
+            rebalance();
+        }
+    }
+
+    /**
+     * Delete a student record with the given studentId.
+     *
+     * @param studentId The student ID to delete.
+     * @return True if the deletion was successful, False if the student is not found.
+     */
+    boolean delete(long studentId) {
+        long size;
+        while (true) {
+            Layout current = layout;
+            int shard = current.shardOf(studentId);
+            ReentrantReadWriteLock.WriteLock lock = locks[shard].writeLock();
+            lock.lock();
+            try {
+                if (current == layout) {
+                    if (!current.shards[shard].delete(studentId)) {
+                        return false;
+                    }
+                    size = sizes.decrementAndGet(shard * SIZE_STRIDE);
+                    break;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (size % SKEW_CHECK_INTERVAL == 0 && skewed()) {
+            rebalance();
+        }
+        return true;
+    }
+
+    /**
+     * Return the record IDs of all students with an ID in [lo, hi]. The shards that overlap the range are
+     * searched in parallel, each under its own read lock.
+     *
+     * @param lo The lowest student ID to include.
+     * @param hi The highest student ID to include.
+     * @return The record IDs in ascending order of student ID.
+     */
+    long[] rangeSearch(long lo, long hi) {
+        if (lo > hi) {
+            return new long[0];
+        }
+        while (true) {
+            Layout current = layout;
+            long[] recordIds = pool.invoke(new RangeTask(current, lo, hi, current.shardOf(lo), current.shardOf(hi) + 1));
+            if (recordIds != null) {
+                return recordIds;
+            }
+        }
+    }
+
+    /**
+     * Replace the contents of the forest with the given student records. The split points are set to the
+     * quantiles of their IDs, so every shard starts with the same number of records, and the shards are
+     * built in parallel.
+     *
+     * @param students The student records to load.
+     */
+    void bulkLoad(List<Student> students) {
+        List<Student> rows = new ArrayList<>(students);
+        rows.sort(Comparator.comparingLong(s -> s.studentId));
+        long[] keys = new long[rows.size()];
+        long[] values = new long[rows.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = rows.get(i).studentId;
+            values[i] = rows.get(i).recordId;
+        }
+        lockAll();
+        try {
+            redistribute(keys, values);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Move the split points to the quantiles of the current student IDs and rebuild the shards, if the
+     * forest is still skewed once every shard is locked.
+     */
+    void rebalance() {
+        lockAll();
+        try {
+            if (!skewed()) {
+                return; // Another thread got here first
+            }
+            // Collect the entries of every shard in parallel, then concatenate them in shard order.
+            BTree[] shards = layout.shards;
+            long[][] shardKeys = new long[shards.length][];
+            long[][] shardValues = new long[shards.length][];
+            pool.submit(() -> IntStream.range(0, shards.length).parallel().forEach(i -> {
+                int n = (int) sizes.get(i * SIZE_STRIDE);
+                shardKeys[i] = new long[n];
+                shardValues[i] = new long[n];
+                BTreeCursor cursor = shards[i].cursor(Long.MIN_VALUE);
+                for (int j = 0; j < n; j++, cursor.next()) {
+                    shardKeys[i][j] = cursor.key();
+                    shardValues[i][j] = cursor.value();
+                }
+            })).join();
+            long[] keys = new long[(int) size()];
+            long[] values = new long[keys.length];
+            int pos = 0;
+            for (int i = 0; i < shards.length; i++) {
+                System.arraycopy(shardKeys[i], 0, keys, pos, shardKeys[i].length);
+                System.arraycopy(shardValues[i], 0, values, pos, shardValues[i].length);
+                pos += shardKeys[i].length;
+            }
+            redistribute(keys, values);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    private void redistribute(long[] keys, long[] values) {
+        // Caller holds every shard lock. Shard i gets the entries in [bounds[i], bounds[i + 1]).
+        int shardCount = locks.length;
+        int[] bounds = new int[shardCount + 1];
+        long[] splits = new long[shardCount - 1];
+        bounds[shardCount] = keys.length;
+        for (int i = 1; i < shardCount; i++) {
+            int bound = (int) ((long) keys.length * i / shardCount);
+            // Never separate equal keys: the bound moves back to the first copy.
+            while (bound > bounds[i - 1] && bound < keys.length && keys[bound - 1] == keys[bound]) {
+                bound--;
+            }
+            bounds[i] = Math.max(bound, bounds[i - 1]);
+            splits[i - 1] = bounds[i] < keys.length ? keys[bounds[i]] : Long.MAX_VALUE;
+        }
+        BTree[] shards = new BTree[shardCount];
+        pool.submit(() -> IntStream.range(0, shardCount).parallel().forEach(i -> {
+            shards[i] = new BTree(t).bulkLoad(Arrays.copyOfRange(keys, bounds[i], bounds[i + 1]),
+                    Arrays.copyOfRange(values, bounds[i], bounds[i + 1]), BTree.DEFAULT_FILL_FACTOR);
+        })).join();
+        for (int i = 0; i < shardCount; i++) {
+            sizes.set(i * SIZE_STRIDE, bounds[i + 1] - bounds[i]);
+        }
+        layout = new Layout(splits, shards);
+    }
+
+    private boolean skewed() {
+        long total = 0;
+        long largest = 0;
+        long smallest = Long.MAX_VALUE;
+        for (int i = 0; i < locks.length; i++) {
+            long size = sizes.get(i * SIZE_STRIDE);
+            total += size;
+            largest = Math.max(largest, size);
+            smallest = Math.min(smallest, size);
+        }
+        int shardCount = locks.length;
+        return shardCount > 1 && total >= MIN_REBALANCE_RECORDS * shardCount
+                && largest - smallest > SKEW_RATIO * total / shardCount;
+    }
+
+    private void lockAll() {
+        // Always in shard order, so two threads replacing the layout cannot deadlock.
+        for (ReentrantReadWriteLock lock : locks) {
+            lock.writeLock().lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (int i = locks.length - 1; i >= 0; i--) {
+            locks[i].writeLock().unlock();
+        }
+    }
+
+    private static void lockInPool(Lock lock) {
+        // A worker waiting for a shard lock lets the pool start a spare thread: the lock may be held by a
+        // rebalance that needs pool threads to finish.
+        try {
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                @Override
+                public boolean block() {
+                    lock.lock();
+                    return true;
+                }
+
+                @Override
+                public boolean isReleasable() {
+                    return lock.tryLock();
+                }
+            });
+        } catch (InterruptedException e) {
+            // Lock.lock() is not interruptible, so block() never throws this.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Split points and the shards they route to. Never changed once published.
+     */
+    private static final class Layout {
+
+        /**
+         * Upper bounds (exclusive) of every shard but the last, in ascending order.
+         */
+        final long[] splits;
+        final BTree[] shards;
+
+        Layout(long[] splits, BTree[] shards) {
+            this.splits = splits;
+            this.shards = shards;
+        }
+
+        int shardOf(long studentId) {
+            // Number of split points at or below the studentId: the first shard whose bound is above it.
+            int low = 0;
+            int high = splits.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (splits[mid] <= studentId) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Range search over the shards [from, to) of one layout: halves the shard range until a single shard
+     * is left, then concatenates the halves. Yields null if the layout was replaced before every shard was
+     * read, and the search starts over.
+     */
+    private final class RangeTask extends RecursiveTask<long[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Layout layout;
+        private final long lo;
+        private final long hi;
+        private final int from;
+        private final int to;
+
+        RangeTask(Layout layout, long lo, long hi, int from, int to) {
+            this.layout = layout;
+            this.lo = lo;
+            this.hi = hi;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from == 1) {
+                ReentrantReadWriteLock.ReadLock lock = locks[from].readLock();
+                lockInPool(lock);
+                try {
+                    return layout == ShardedBTree.this.layout ? layout.shards[from].rangeSearch(lo, hi).toArray() : null;
+                } finally {
+                    lock.unlock();
+                }
+            }
+            int mid = (from + to) >>> 1;
+            RangeTask right = new RangeTask(layout, lo, hi, mid, to);
+            right.fork();
+            long[] left = new RangeTask(layout, lo, hi, from, mid).compute();
+            long[] rest = right.join();
+            if (left == null || rest == null) {
+                return null;
+            }
+            long[] merged = Arrays.copyOf(left, left.length + rest.length);
+            System.arraycopy(rest, 0, merged, left.length, rest.length);
+            return merged;
+        }
+    }
+}
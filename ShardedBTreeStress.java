@@ -0,0 +1,114 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput and consistency run for {@link ShardedBTree}.
+ * <p>
+ * Usage: {@code java ShardedBTreeStress [shards] [operationsPerThread] [degree]}. For 1, 2, 4, ... up to
+ * the number of cores, a forest is bulk loaded and that many threads search, insert and delete random
+ * student IDs at once. Each thread owns the IDs congruent to its number modulo the thread count, so it
+ * knows what the forest must hold; a mismatch on any search, on a delete, or in the final range search
+ * counts as a failure. Prints the operations per second at each thread count and exits with status 1 if
+ * anything is inconsistent.
+ */
+public class ShardedBTreeStress {
+
+    private static final int PRELOADED_PER_THREAD = 100_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int shardCount = args.length > 0 ? Integer.parseInt(args[0]) : cores;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        int degree = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        AtomicLong failures = new AtomicLong();
+
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            int threadCount = threads;
+            int keySpace = 2 * PRELOADED_PER_THREAD; // Per thread: half of the slots start out present
+
+            // Slot i of thread w is student ID i * threads + w; its record ID is the ID itself.
+            ShardedBTree forest = new ShardedBTree(shardCount, degree);
+            boolean[][] present = new boolean[threads][keySpace];
+            List<Student> initial = new ArrayList<>();
+            for (int w = 0; w < threads; w++) {
+                for (int slot = 0; slot < keySpace; slot += 2) {
+                    long id = (long) slot * threads + w;
+                    initial.add(new Student(id, 20, "Student", "Major", "Level", id));
+                    present[w][slot] = true;
+                }
+            }
+            forest.bulkLoad(initial);
+
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> workers = new ArrayList<>();
+            for (int w = 0; w < threads; w++) {
+                int worker = w;
+                workers.add(new Thread(() -> {
+                    boolean[] mine = present[worker];
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    await(start);
+                    for (int op = 0; op < operations; op++) {
+                        int slot = random.nextInt(keySpace);
+                        long id = (long) slot * threadCount + worker;
+                        int kind = random.nextInt(10);
+                        if (kind == 0 && !mine[slot]) {
+                            forest.insert(new Student(id, 20, "Student", "Major", "Level", id));
+                            mine[slot] = true;
+                        } else if (kind == 1) {
+                            if (forest.delete(id) != mine[slot]) {
+                                failures.incrementAndGet();
+                            }
+                            mine[slot] = false;
+                        } else if (forest.search(id) != (mine[slot] ? id : -1)) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            workers.forEach(Thread::start);
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            long nanos = System.nanoTime() - begin;
+
+            // Every record ID equals its student ID, so the full range must be exactly the present IDs.
+            long expected = 0;
+            for (int w = 0; w < threads; w++) {
+                for (int slot = 0; slot < keySpace; slot++) {
+                    expected += present[w][slot] ? 1 : 0;
+                }
+            }
+            long[] all = forest.rangeSearch(Long.MIN_VALUE, Long.MAX_VALUE);
+            if (all.length != expected || forest.size() != expected) {
+                failures.incrementAndGet();
+            }
+            for (int i = 0; i < all.length; i++) {
+                long id = all[i];
+                if ((i > 0 && id <= all[i - 1]) || !present[(int) (id % threads)][(int) (id / threads)]) {
+                    failures.incrementAndGet();
+                    break;
+                }
+            }
+            System.out.printf("threads=%d shards=%d: %.0f ops/s%n", threads, shardCount,
+                    (double) operations * threads / nanos * 1e9);
+        }
+
+        System.out.println(failures.get() == 0 ? "OK" : "FAILED: " + failures.get() + " inconsistencies");
+        if (failures.get() != 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,302 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of full student rows by studentId, with W-TinyLFU admission and eviction.
+ * <p>
+ * New rows enter a small LRU window (1% of the capacity) so that a burst of new keys cannot flush the
+ * cache. A row that falls out of the window only replaces the next eviction victim of the main area if
+ * it has been requested more often recently, as estimated by a count-min sketch of 4-bit counters that
+ * are halved periodically so that old popularity fades. The main area is a segmented LRU: rows start on
+ * probation (20%) and move to the protected segment (80%) on their next hit, so rows hit once are evicted
+ * before rows hit repeatedly. Under skewed (Zipfian) traffic this keeps the hot rows resident with a
+ * cache much smaller than the table.
+ * <p>
+ * Not thread-safe, like {@link BTree}.
+ */
+class StudentCache {
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final int capacity;
+    private final int windowCapacity;
+    private final int protectedCapacity;
+    private final Map<Long, Node> nodes = new HashMap<>();
+    /**
+     * LRU order of each region, least recently used first.
+     */
+    private final Node window = new Node(0, null);
+    private final Node probation = new Node(0, null);
+    private final Node protectedRows = new Node(0, null);
+    private int windowSize;
+    private int protectedSize;
+    private final FrequencySketch sketch;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long rejections;
+
+    /**
+     * @param capacity Maximum number of rows to keep, at least 2.
+     */
+    StudentCache(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("A student cache needs room for at least 2 rows: " + capacity);
+        }
+        this.capacity = capacity;
+        this.windowCapacity = Math.max(1, capacity / 100);
+        this.protectedCapacity = (int) ((capacity - windowCapacity) * 0.8);
+        this.sketch = new FrequencySketch(capacity);
+        for (Node list : new Node[]{window, probation, protectedRows}) {
+            list.prev = list;
+            list.next = list;
+        }
+    }
+
+    /**
+     * Look up a row and record the request in the frequency sketch, whether it hits or not.
+     *
+     * @param studentId The student ID.
+     * @return The cached row, or null.
+     */
+    Student get(long studentId) {
+        sketch.increment(studentId);
+        Node node = nodes.get(studentId);
+        if (node == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        if (node.region == PROBATION) {
+            // A second hit: promote, demoting the least recently used protected row if there is no room.
+            unlink(node);
+            node.region = PROTECTED;
+            append(protectedRows, node);
+            if (++protectedSize > protectedCapacity) {
+                Node demoted = protectedRows.next;
+                unlink(demoted);
+                protectedSize--;
+                demoted.region = PROBATION;
+                append(probation, demoted);
+            }
+        } else {
+            unlink(node);
+            append(node.region == WINDOW ? window : protectedRows, node);
+        }
+        return node.student;
+    }
+
+    /**
+     * Add a row that was just read after a miss, evicting another row if the cache is full.
+     *
+     * @param student The row.
+     */
+    void put(Student student) {
+        Node node = nodes.get(student.studentId);
+        if (node != null) {
+            node.student = student;
+            return;
+        }
+        node = new Node(student.studentId, student);
+        node.region = WINDOW;
+        nodes.put(node.key, node);
+        append(window, node);
+        if (++windowSize <= windowCapacity) {
+            return;
+        }
+
+        // The window overflows: its oldest row becomes a candidate for the main area.
+        Node candidate = window.next;
+        unlink(candidate);
+        windowSize--;
+        candidate.region = PROBATION;
+        append(probation, candidate);
+        if (nodes.size() <= capacity) {
+            return;
+        }
+        // Main area full: keep whichever of the candidate and the probation victim is requested more.
+        Node victim = probation.next;
+        if (victim == candidate) {
+            victim = protectedRows.next; // Probation held nothing else
+        }
+        if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+            evict(victim);
+        } else {
+            evict(candidate);
+            rejections++;
+        }
+    }
+
+    /**
+     * Drop the row of a student whose row changed, or that was deleted.
+     *
+     * @param studentId The student ID.
+     */
+    void invalidate(long studentId) {
+        Node node = nodes.remove(studentId);
+        if (node != null) {
+            unlink(node);
+            if (node.region == WINDOW) {
+                windowSize--;
+            } else if (node.region == PROTECTED) {
+                protectedSize--;
+            }
+        }
+    }
+
+    /**
+     * Drop every row; the request frequencies are kept.
+     */
+    void clear() {
+        for (Node list : new Node[]{window, probation, protectedRows}) {
+            list.prev = list;
+            list.next = list;
+        }
+        nodes.clear();
+        windowSize = 0;
+        protectedSize = 0;
+    }
+
+    int size() {
+        return nodes.size();
+    }
+
+    long hits() {
+        return hits;
+    }
+
+    long misses() {
+        return misses;
+    }
+
+    long evictions() {
+        return evictions;
+    }
+
+    /**
+     * @return Number of rows that left the window and were not admitted, since the main area held rows
+     * requested more often.
+     */
+    long rejections() {
+        return rejections;
+    }
+
+    /**
+     * @return Fraction of lookups served from the cache, or 0 before the first lookup.
+     */
+    double hitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("StudentCache[capacity=%d, size=%d, hits=%d, misses=%d, hitRate=%.3f, evictions=%d, rejections=%d]",
+                capacity, nodes.size(), hits, misses, hitRate(), evictions, rejections);
+    }
+
+    private void evict(Node node) {
+        invalidate(node.key);
+        evictions++;
+    }
+
+    private static void append(Node list, Node node) {
+        // Insert at the most recently used end.
+        node.prev = list.prev;
+        node.next = list;
+        list.prev.next = node;
+        list.prev = node;
+    }
+
+    private static void unlink(Node node) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+    }
+
+    /**
+     * A cached row, linked into the LRU list of its region. Each list has a sentinel node.
+     */
+    private static final class Node {
+
+        final long key;
+        Student student;
+        int region;
+        Node prev;
+        Node next;
+
+        Node(long key, Student student) {
+            this.key = key;
+            this.student = student;
+        }
+    }
+
+    /**
+     * Count-min sketch with 4-bit counters, 16 to a word. A key has one counter in each of 4 words picked
+     * by different hashes; its estimate is the smallest. After 10 requests per cached row all counters are
+     * halved.
+     */
+    private static final class FrequencySketch {
+
+        private static final long RESET_MASK = 0x7777777777777777L;
+        private static final long[] SEEDS = {
+                0x97CB3127B0A1E5F1L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0x9E3779B97F4A7C15L};
+
+        private final long[] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int capacity) {
+            int words = Integer.highestOneBit(Math.max(16, capacity - 1) << 1);
+            this.table = new long[words];
+            this.mask = words - 1;
+            this.sampleSize = 10 * capacity;
+        }
+
+        void increment(long key) {
+            long hash = spread(key);
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                long h = (hash + SEEDS[i]) * SEEDS[i];
+                int index = (int) (h >>> 32) & mask;
+                int shift = (int) (h & 15) << 2;
+                if (((table[index] >>> shift) & 15) < 15) {
+                    table[index] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++additions == sampleSize) {
+                reset();
+            }
+        }
+
+        int frequency(long key) {
+            long hash = spread(key);
+            int frequency = 15;
+            for (int i = 0; i < SEEDS.length; i++) {
+                long h = (hash + SEEDS[i]) * SEEDS[i];
+                int index = (int) (h >>> 32) & mask;
+                int shift = (int) (h & 15) << 2;
+                frequency = Math.min(frequency, (int) ((table[index] >>> shift) & 15));
+            }
+            return frequency;
+        }
+
+        private void reset() {
+            // Halve every counter so that past popularity fades.
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            additions /= 2;
+        }
+
+        private static long spread(long key) {
+            long z = (key ^ (key >>> 33)) * 0xFF51AFD7ED558CCDL;
+            z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+            return z ^ (z >>> 33);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The student data file (Student.csv) with tombstone deletes.
+ * <p>
+ * Deleting a student does not rewrite the file: the student ID is appended to a tombstone file next to
+ * it (Student.csv.del) and remembered in memory, and {@link #load()} skips tombstoned rows. Compaction
+ * rewrites the file in one pass without those rows. It runs in the background once the tombstones exceed
+ * a fraction of the rows, or on demand with {@link #compact()}.
+ */
+class StudentDataFile implements Closeable {
+
+    private final Path csv;
+    private final Path tombstoneFile;
+    private final double compactionRatio;
+    private final ExecutorService compactor;
+    /**
+     * Held for the whole of a compaction, so that only one runs at a time.
+     */
+    private final Object compactionLock = new Object();
+
+    /**
+     * Student IDs deleted since the last compaction.
+     */
+    private final Set<Long> tombstones = new HashSet<>();
+    private DataOutputStream tombstoneLog;
+    /**
+     * The file under {@link #tombstoneLog}, to force it to disk on close.
+     */
+    private FileChannel tombstoneChannel;
+    /**
+     * Rows in the file as of the last load or the last compaction, used for the compaction threshold, or
+     * -1 until the file is read.
+     */
+    private long rows = -1;
+    private boolean compacting;
+
+    private StudentDataFile(Path csv, double compactionRatio) throws IOException {
+        this.csv = csv;
+        this.tombstoneFile = csv.resolveSibling(csv.getFileName() + ".del");
+        this.compactionRatio = compactionRatio;
+        this.compactor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "student-data-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // Tombstones written before the last shutdown still apply.
+        if (Files.exists(tombstoneFile)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(tombstoneFile)))) {
+                while (true) {
+                    tombstones.add(in.readLong());
+                }
+            } catch (EOFException e) {
+                // All complete tombstones are read; a torn last one is ignored.
+            }
+        }
+        this.tombstoneLog = openTombstoneLog(false);
+    }
+
+    /**
+     * Open the data file and the tombstones recorded next to it.
+     *
+     * @param csv             The student data file.
+     * @param compactionRatio Compact once the tombstones exceed this fraction of the rows, e.g. 0.2.
+     * @return The opened data file.
+     * @throws IOException If the tombstone file cannot be read or created.
+     */
+    static StudentDataFile open(Path csv, double compactionRatio) throws IOException {
+        return new StudentDataFile(csv, compactionRatio);
+    }
+
+    /**
+     * Read all students that have not been deleted.
+     *
+     * @return The students, in file order.
+     * @throws IOException If the file cannot be read.
+     */
+    synchronized List<Student> load() throws IOException {
+        List<Student> studentList = new ArrayList<>();
+        rows = 0;
+        try (BufferedReader br = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+            String line; // will store current row of csv as string
+            while ((line = br.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                rows++;
+                String[] values = line.split(","); // gets all values in current row
+                long studentId = Long.parseLong(values[0]);
+                if (!tombstones.contains(studentId)) {
+                    studentList.add(new Student(studentId, Integer.parseInt(values[4]),
+                            values[1], values[2], values[3], Long.parseLong(values[5])));
+                }
+            }
+        }
+        return studentList;
+    }
+
+    private long countRows() throws IOException {
+        if (!Files.exists(csv)) {
+            return 0;
+        }
+        long count = 0;
+        try (BufferedReader br = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Record that a student was deleted. Starts a background compaction if the threshold is reached.
+     *
+     * @param studentId The deleted student ID.
+     * @throws IOException If the tombstone cannot be written, or the rows of a data file that was never
+     *                     loaded cannot be counted.
+     */
+    synchronized void markDeleted(long studentId) throws IOException {
+        if (!tombstones.add(studentId)) {
+            return;
+        }
+        tombstoneLog.writeLong(studentId);
+        if (rows < 0) {
+            // Students may come from elsewhere than load(), e.g. the record heap, and deletes still count
+            // against the rows in the file, so they are counted on the first delete.
+            rows = countRows();
+        }
+        if (!compacting && tombstones.size() > compactionRatio * rows) {
+            compacting = true;
+            compactor.execute(() -> {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    System.out.println("Error compacting " + csv + ": " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * @return True if the student was deleted since the last compaction.
+     */
+    synchronized boolean isDeleted(long studentId) {
+        return tombstones.contains(studentId);
+    }
+
+    /**
+     * Rewrite the data file without the tombstoned rows, in one pass. Deletes recorded while the file
+     * is being rewritten are kept for the next compaction.
+     *
+     * @throws IOException If the file cannot be rewritten.
+     */
+    void compact() throws IOException {
+        synchronized (compactionLock) {
+            rewrite();
+        }
+    }
+
+    private void rewrite() throws IOException {
+        Set<Long> purged;
+        synchronized (this) {
+            compacting = true;
+            tombstoneLog.flush();
+            purged = new HashSet<>(tombstones);
+        }
+
+        Path tempFile = csv.resolveSibling(csv.getFileName() + ".tmp");
+        long kept = 0;
+        try (BufferedReader br = Files.newBufferedReader(csv, StandardCharsets.UTF_8);
+             BufferedWriter bw = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                // Only the studentId in front of the first comma is parsed.
+                long studentId = Long.parseLong(line.substring(0, line.indexOf(',')));
+                if (!purged.contains(studentId)) {
+                    bw.write(line);
+                    bw.newLine();
+                    kept++;
+                }
+            }
+        }
+
+        synchronized (this) {
+            Files.move(tempFile, csv, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            tombstones.removeAll(purged);
+            rows = kept;
+
+            // Start a new tombstone file with only the deletes that came in during the rewrite.
+            tombstoneLog.close();
+            tombstoneLog = openTombstoneLog(true);
+            for (long studentId : tombstones) {
+                tombstoneLog.writeLong(studentId);
+            }
+            tombstoneLog.flush();
+            compacting = false;
+        }
+    }
+
+    /**
+     * Write buffered tombstones to the file. Deletes are also in the write-ahead log, so a tombstone lost
+     * in a crash only brings back a row that the log deletes again when it is replayed.
+     *
+     * @throws IOException If the tombstones cannot be written.
+     */
+    synchronized void flush() throws IOException {
+        tombstoneLog.flush();
+    }
+
+    /**
+     * Wait for a running compaction, then force the tombstones to disk and close the tombstone file.
+     *
+     * @throws IOException If the tombstones cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            tombstoneLog.flush();
+            tombstoneChannel.force(false);
+            tombstoneLog.close();
+        }
+    }
+
+    private DataOutputStream openTombstoneLog(boolean truncate) throws IOException {
+        tombstoneChannel = FileChannel.open(tombstoneFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                truncate ? StandardOpenOption.TRUNCATE_EXISTING : StandardOpenOption.APPEND);
+        return new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(tombstoneChannel)));
+    }
+}
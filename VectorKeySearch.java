@@ -0,0 +1,51 @@
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Compares a whole vector of keys against the search key at once and counts the matches.
+ * <p>
+ * Because the keys are sorted, the number of keys below the search key in a block is also the offset of
+ * the answer inside that block, so the scan stops at the first block that is not entirely below it.
+ * Needs {@code --add-modules jdk.incubator.vector} to compile and run; use {@link KeySearch#vectorized()}
+ * to fall back to the binary search when the module is missing.
+ */
+class VectorKeySearch implements KeySearch {
+
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+    @Override
+    public int lowerBound(long[] keys, int from, int n, long key) {
+        LongVector target = LongVector.broadcast(SPECIES, key);
+        int bound = SPECIES.loopBound(n);
+        int index = 0;
+        for (; index < bound; index += SPECIES.length()) {
+            int below = LongVector.fromArray(SPECIES, keys, from + index).compare(VectorOperators.LT, target).trueCount();
+            if (below < SPECIES.length()) {
+                return index + below;
+            }
+        }
+        // Finish the last partial block with a scalar scan.
+        while (index < n && keys[from + index] < key) {
+            index++;
+        }
+        return index;
+    }
+
+    @Override
+    public int upperBound(long[] keys, int from, int n, long key) {
+        LongVector target = LongVector.broadcast(SPECIES, key);
+        int bound = SPECIES.loopBound(n);
+        int index = 0;
+        for (; index < bound; index += SPECIES.length()) {
+            int notAbove = LongVector.fromArray(SPECIES, keys, from + index).compare(VectorOperators.LE, target).trueCount();
+            if (notAbove < SPECIES.length()) {
+                return index + notAbove;
+            }
+        }
+        while (index < n && keys[from + index] <= key) {
+            index++;
+        }
+        return index;
+    }
+}
@@ -0,0 +1,95 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Node of a {@link ConcurrentBTree}, guarded by a version latch for optimistic lock coupling.
+ * <p>
+ * The version word counts modifications in steps of 2; bit 0 is set while a writer holds the latch.
+ * Readers never write to it: they remember the
+ * version, read the node without locking, and check afterwards that the version is unchanged. Writers
+ * upgrade a version they have read to the latch with a single compare-and-set.
+ */
+class VersionedNode {
+
+    /**
+     * Returned by {@link #readLock()} when the operation has to restart from the root.
+     */
+    static final long RESTART = -1;
+
+    private static final long LOCKED = 1;
+    private static final VarHandle VERSION;
+
+    static {
+        try {
+            VERSION = MethodHandles.lookup().findVarHandle(VersionedNode.class, "version", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Sorted keys; separators in an internal node, student IDs in a leaf.
+     */
+    final long[] keys;
+    /**
+     * Record IDs, only used in a leaf.
+     */
+    final long[] values;
+    /**
+     * Child pointers, only used in an internal node.
+     */
+    final VersionedNode[] children;
+    final boolean leaf;
+    /**
+     * Number of keys. Read without the latch, so readers must clamp it before indexing.
+     */
+    int n;
+
+    private volatile long version = 2;
+
+    VersionedNode(int t, boolean leaf) {
+        this.leaf = leaf;
+        this.keys = new long[2 * t - 1];
+        this.values = leaf ? new long[2 * t - 1] : null;
+        this.children = leaf ? null : new VersionedNode[2 * t];
+    }
+
+    /**
+     * Start an optimistic read.
+     *
+     * @return The version to validate against, or {@link #RESTART} if a writer holds the latch.
+     */
+    long readLock() {
+        long v = version;
+        return (v & LOCKED) != 0 ? RESTART : v;
+    }
+
+    /**
+     * Check that nothing read from the node since {@link #readLock()} was changed by a writer.
+     *
+     * @param v The version returned by {@link #readLock()}.
+     * @return True if the reads are consistent.
+     */
+    boolean validate(long v) {
+        // Keep the plain reads of the node from moving past the version check.
+        VarHandle.acquireFence();
+        return version == v;
+    }
+
+    /**
+     * Take the latch, provided the node has not changed since the version was read.
+     *
+     * @param v The version returned by {@link #readLock()}.
+     * @return True if the latch is now held.
+     */
+    boolean upgrade(long v) {
+        return VERSION.compareAndSet(this, v, v + LOCKED);
+    }
+
+    /**
+     * Release the latch and publish the changes as a new version.
+     */
+    void writeUnlock() {
+        VERSION.getAndAdd(this, LOCKED);
+    }
+}
@@ -0,0 +1,270 @@
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the inserts and deletes applied to a {@link BTree}, replayed on restart.
+ * <p>
+ * The log keeps one {@link FileChannel} open. Records are collected in memory and written together
+ * (group commit) once {@code batchSize} records are pending or the oldest pending record is
+ * {@code windowMillis} old, whichever comes first; {@link #sync()} writes them at once. With
+ * {@code fsync} each group is also forced to the storage device before the next one is started.
+ * <p>
+ * Each record is framed as [int length][int CRC32][payload], so a torn write at the end of the file is
+ * detected on replay and cut off.
+ */
+class WriteAheadLog implements Closeable {
+
+    private static final byte INSERT = 1;
+    private static final byte DELETE = 2;
+    private static final int FRAME_HEADER = 2 * Integer.BYTES;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final int batchSize;
+    private final long windowNanos;
+    private final boolean fsync;
+    private final ScheduledExecutorService flusher;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final CRC32 crc = new CRC32();
+    private int pending;
+    private long oldestPending;
+
+    private WriteAheadLog(FileChannel channel, int batchSize, long windowMillis, boolean fsync) {
+        this.channel = channel;
+        this.batchSize = batchSize;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.fsync = fsync;
+        if (windowMillis > 0) {
+            // Commit a group that has waited out its window even if no further record arrives.
+            this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "wal-group-commit");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.flusher.scheduleAtFixedRate(this::commitIfDue, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    /**
+     * Open a log file, creating it if needed. Existing records are kept for {@link #replay}.
+     *
+     * @param path         The log file.
+     * @param batchSize    Commit once this many records are pending; 1 commits every record.
+     * @param windowMillis Commit once the oldest pending record is this old; 0 disables the time window.
+     * @param fsync        Force every committed group to the storage device.
+     * @return The opened log.
+     * @throws IOException If the file cannot be opened.
+     */
+    static WriteAheadLog open(Path path, int batchSize, long windowMillis, boolean fsync) throws IOException {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1: " + batchSize);
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        return new WriteAheadLog(channel, batchSize, windowMillis, fsync);
+    }
+
+    /**
+     * Log the insert of a student record.
+     *
+     * @param student The inserted record.
+     * @throws IOException If a group commit triggered by this record fails.
+     */
+    synchronized void logInsert(Student student) throws IOException {
+        byte[] name = student.studentName.getBytes(StandardCharsets.UTF_8);
+        byte[] major = student.major.getBytes(StandardCharsets.UTF_8);
+        byte[] level = student.level.getBytes(StandardCharsets.UTF_8);
+        int length = 1 + 2 * Long.BYTES + Integer.BYTES + 3 * Short.BYTES + name.length + major.length + level.length;
+        int start = beginRecord(length);
+        buffer.put(INSERT);
+        buffer.putLong(student.studentId);
+        buffer.putLong(student.recordId);
+        buffer.putInt(student.age);
+        putString(name);
+        putString(major);
+        putString(level);
+        endRecord(start);
+    }
+
+    /**
+     * Log the delete of a student record.
+     *
+     * @param studentId The deleted student ID.
+     * @throws IOException If a group commit triggered by this record fails.
+     */
+    synchronized void logDelete(long studentId) throws IOException {
+        int start = beginRecord(1 + Long.BYTES);
+        buffer.put(DELETE);
+        buffer.putLong(studentId);
+        endRecord(start);
+    }
+
+    /**
+     * Commit all pending records now.
+     *
+     * @throws IOException If the records cannot be written.
+     */
+    synchronized void sync() throws IOException {
+        if (buffer.position() == 0) {
+            return;
+        }
+        buffer.flip();
+        long position = channel.size();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        buffer.clear();
+        pending = 0;
+        if (fsync) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Read every intact record from the start of the log, in order. A torn or corrupt record at the end
+     * is cut off so that new records follow the last intact one.
+     *
+     * @param onInsert Called with each logged insert.
+     * @param onDelete Called with the student ID of each logged delete.
+     * @return The number of records replayed.
+     * @throws IOException If the log cannot be read.
+     */
+    synchronized int replay(Consumer<Student> onInsert, LongConsumer onDelete) throws IOException {
+        sync();
+        int records = 0;
+        long intact = 0;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(channel.position(0)), BUFFER_SIZE));
+        try {
+            while (true) {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length <= 0 || length > BUFFER_SIZE) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                ByteBuffer record = ByteBuffer.wrap(payload);
+                if (record.get() == INSERT) {
+                    long studentId = record.getLong();
+                    long recordId = record.getLong();
+                    int age = record.getInt();
+                    String name = getString(record);
+                    String major = getString(record);
+                    String level = getString(record);
+                    onInsert.accept(new Student(studentId, age, name, major, level, recordId));
+                } else {
+                    onDelete.accept(record.getLong());
+                }
+                records++;
+                intact += FRAME_HEADER + length;
+            }
+        } catch (EOFException e) {
+            // End of the log; a partly written last record is dropped below.
+        }
+        if (intact < channel.size()) {
+            channel.truncate(intact);
+        }
+        return records;
+    }
+
+    /**
+     * Drop every record, once they are durable elsewhere (e.g. in an index file that has been closed).
+     *
+     * @throws IOException If the log cannot be truncated.
+     */
+    synchronized void truncate() throws IOException {
+        sync();
+        channel.truncate(0);
+        if (fsync) {
+            channel.force(false);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        synchronized (this) {
+            sync();
+            channel.close();
+        }
+    }
+
+    private int beginRecord(int length) throws IOException {
+        if (length + FRAME_HEADER > BUFFER_SIZE) {
+            throw new IOException("Log record too large: " + length + " bytes");
+        }
+        if (buffer.remaining() < length + FRAME_HEADER) {
+            sync();
+        }
+        if (pending == 0) {
+            oldestPending = System.nanoTime();
+        }
+        int start = buffer.position();
+        buffer.position(start + FRAME_HEADER);
+        return start;
+    }
+
+    private void endRecord(int start) throws IOException {
+        // Fill in the frame header now that the payload is in the buffer.
+        int length = buffer.position() - start - FRAME_HEADER;
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(start + FRAME_HEADER).limit(start + FRAME_HEADER + length);
+        crc.reset();
+        crc.update(payload);
+        buffer.putInt(start, length);
+        buffer.putInt(start + Integer.BYTES, (int) crc.getValue());
+
+        pending++;
+        if (pending >= batchSize || (windowNanos > 0 && System.nanoTime() - oldestPending >= windowNanos)) {
+            sync();
+        }
+    }
+
+    private synchronized void commitIfDue() {
+        if (pending > 0 && System.nanoTime() - oldestPending >= windowNanos) {
+            try {
+                sync();
+            } catch (IOException e) {
+                System.out.println("Error committing the write-ahead log: " + e.getMessage());
+            }
+        }
+    }
+
+    private void putString(byte[] bytes) {
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer record) {
+        byte[] bytes = new byte[record.getShort() & 0xFFFF];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,55 @@
+package bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Point lookups and full scans of a loaded tree.
+ * <p>
+ * {@code print} does not depend on the key distribution; pass {@code -p distribution=SEQUENTIAL} to run
+ * it only once per degree and size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BTreeReadBenchmark extends TreeBenchmark {
+
+    /**
+     * Number of precomputed lookups, a power of two so the next one is picked with a mask.
+     */
+    private static final int QUERIES = 1 << 20;
+
+    private long[] queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void pickQueries() {
+        long[] ranks = distribution.ranks(QUERIES, size, 42);
+        queries = new long[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = Tree.key(ranks[i]);
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public long search() {
+        return tree.search(queries[next++ & (QUERIES - 1)]);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Long> print() {
+        return tree.print();
+    }
+}
@@ -0,0 +1,119 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Inserts and deletes against a loaded tree.
+ * <p>
+ * Every invocation applies a batch of {@link #BATCH} operations and is undone, outside the measurement,
+ * before the next one, so the tree keeps its size for the whole trial. Scores are per operation.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(BTreeWriteBenchmark.BATCH)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@Warmup(iterations = 50)
+@Measurement(iterations = 100)
+public class BTreeWriteBenchmark extends TreeBenchmark {
+
+    /**
+     * Operations per invocation; must stay below {@link Tree#GAP}.
+     */
+    static final int BATCH = 10_000;
+
+    /**
+     * Precomputed ranks in the key distribution; consecutive invocations take consecutive batches.
+     */
+    private long[] ranks;
+    private int offset;
+
+    @Setup(Level.Trial)
+    public void pickRanks() {
+        ranks = distribution.ranks(1 << 20, size, 7);
+    }
+
+    long[] nextBatch() {
+        long[] batch = new long[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            batch[i] = ranks[offset];
+            offset = (offset + 1) % ranks.length;
+        }
+        return batch;
+    }
+
+    /**
+     * Students that are not in the tree yet: the i-th student of a batch takes the i-th free ID after its
+     * rank, so the IDs stay unique even when a skewed batch picks the same rank many times.
+     */
+    @State(Scope.Thread)
+    public static class NewStudents {
+
+        long[] studentIds = new long[BATCH];
+
+        @Setup(Level.Invocation)
+        public void next(BTreeWriteBenchmark benchmark) {
+            long[] batch = benchmark.nextBatch();
+            for (int i = 0; i < BATCH; i++) {
+                studentIds[i] = Tree.key(batch[i]) + 1 + i;
+            }
+        }
+
+        @TearDown(Level.Invocation)
+        public void undo(BTreeWriteBenchmark benchmark) {
+            for (long studentId : studentIds) {
+                benchmark.tree.delete(studentId);
+            }
+        }
+    }
+
+    /**
+     * Students that are in the tree.
+     */
+    @State(Scope.Thread)
+    public static class ExistingStudents {
+
+        long[] ranks;
+        boolean[] deleted = new boolean[BATCH];
+
+        @Setup(Level.Invocation)
+        public void next(BTreeWriteBenchmark benchmark) {
+            ranks = benchmark.nextBatch();
+        }
+
+        @TearDown(Level.Invocation)
+        public void undo(BTreeWriteBenchmark benchmark) {
+            for (int i = 0; i < BATCH; i++) {
+                if (deleted[i]) {
+                    benchmark.tree.insert(Tree.key(ranks[i]), ranks[i]);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void insert(NewStudents students) {
+        for (int i = 0; i < BATCH; i++) {
+            tree.insert(students.studentIds[i], i);
+        }
+    }
+
+    @Benchmark
+    public void delete(ExistingStudents students) {
+        for (int i = 0; i < BATCH; i++) {
+            students.deleted[i] = tree.delete(Tree.key(students.ranks[i]));
+        }
+    }
+}
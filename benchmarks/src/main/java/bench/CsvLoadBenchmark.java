@@ -0,0 +1,85 @@
+package bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The startup path of BTreeMain: parse Student.csv with {@code getStudents}, then bulk load the tree.
+ * Each trial writes a CSV file of random students in the format of Student.csv to a temporary directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CsvLoadBenchmark {
+
+    private static final String[] MAJORS = {"English", "Architecture", "Law", "Physics", "Computer Science"};
+    private static final String[] LEVELS = {"FR", "SO", "JR", "SR"};
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int rows;
+
+    @Param({"16"})
+    public int t;
+
+    private Path directory;
+    private Path csv;
+
+    @Setup(Level.Trial)
+    public void writeCsv() throws IOException {
+        directory = Files.createTempDirectory("btree-bench");
+        csv = directory.resolve("Student.csv");
+        SplittableRandom random = new SplittableRandom(1);
+        try (BufferedWriter writer = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+            for (int row = 0; row < rows; row++) {
+                writer.write(Long.toString(10_000_000L + random.nextLong(90_000_000L)));
+                writer.write(",Student " + row + ",");
+                writer.write(MAJORS[random.nextInt(MAJORS.length)] + "," + LEVELS[random.nextInt(LEVELS.length)]);
+                writer.write("," + (18 + random.nextInt(10)) + "," + row);
+                writer.newLine();
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteCsv() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public List<?> getStudents() {
+        return Tree.loadCsv(csv);
+    }
+
+    @Benchmark
+    public Tree loadTree() {
+        return Tree.withStudents(t, Tree.loadCsv(csv));
+    }
+}
@@ -0,0 +1,94 @@
+package bench;
+
+import java.util.SplittableRandom;
+
+/**
+ * Order in which a benchmark visits the students of a tree, as ranks in [0, size).
+ */
+public enum KeyDistribution {
+
+    /**
+     * Ascending ranks, wrapping around at the end of the tree.
+     */
+    SEQUENTIAL {
+        @Override
+        long[] ranks(int count, int size, long seed) {
+            long[] ranks = new long[count];
+            for (int i = 0; i < count; i++) {
+                ranks[i] = i % size;
+            }
+            return ranks;
+        }
+    },
+
+    /**
+     * Uniformly random ranks.
+     */
+    RANDOM {
+        @Override
+        long[] ranks(int count, int size, long seed) {
+            SplittableRandom random = new SplittableRandom(seed);
+            long[] ranks = new long[count];
+            for (int i = 0; i < count; i++) {
+                ranks[i] = random.nextInt(size);
+            }
+            return ranks;
+        }
+    },
+
+    /**
+     * Zipfian ranks with exponent 0.99, as in YCSB: a few hot students take most of the accesses. The
+     * popularity order is scrambled so that the hot students are spread over the whole tree.
+     */
+    ZIPFIAN {
+        private static final double THETA = 0.99;
+
+        @Override
+        long[] ranks(int count, int size, long seed) {
+            double zetaN = 0;
+            for (int i = 1; i <= size; i++) {
+                zetaN += 1 / Math.pow(i, THETA);
+            }
+            double alpha = 1 / (1 - THETA);
+            double zeta2 = 1 + Math.pow(0.5, THETA);
+            double eta = (1 - Math.pow(2.0 / size, 1 - THETA)) / (1 - zeta2 / zetaN);
+
+            SplittableRandom random = new SplittableRandom(seed);
+            long[] ranks = new long[count];
+            for (int i = 0; i < count; i++) {
+                double u = random.nextDouble();
+                double uz = u * zetaN;
+                long popularity;
+                if (uz < 1) {
+                    popularity = 0;
+                } else if (uz < zeta2) {
+                    popularity = 1;
+                } else {
+                    popularity = Math.min(size - 1, (long) (size * Math.pow(eta * u - eta + 1, alpha)));
+                }
+                ranks[i] = Math.floorMod(scramble(popularity), size);
+            }
+            return ranks;
+        }
+    };
+
+    /**
+     * Generate ranks in this distribution.
+     *
+     * @param count Number of ranks to generate.
+     * @param size  Number of students in the tree.
+     * @param seed  Seed of the random source, so that runs are reproducible.
+     * @return The ranks.
+     */
+    abstract long[] ranks(int count, int size, long seed);
+
+    private static long scramble(long value) {
+        // 64-bit FNV-1a over the bytes of the value.
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < 8; i++) {
+            hash ^= (value >>> (8 * i)) & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
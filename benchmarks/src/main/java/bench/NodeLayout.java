@@ -0,0 +1,22 @@
+package bench;
+
+/**
+ * How the nodes of the benchmarked tree are stored.
+ */
+public enum NodeLayout {
+
+    /**
+     * BTree: one BTreeNode object per node, with its own key, value and child arrays.
+     */
+    OBJECTS,
+
+    /**
+     * ArenaBTree: all nodes in pooled long[] and int[] slabs, addressed by int handles.
+     */
+    ARENA,
+
+    /**
+     * ArenaBTree with leaves compressed by frame of reference and bit-packing.
+     */
+    PACKED
+}
@@ -0,0 +1,240 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Access to the B+Tree from the benchmarks.
+ * <p>
+ * The tree lives in the default package, which cannot be imported, and JMH does not accept benchmarks in
+ * the default package. The package-private entry points are therefore bound once through method handles.
+ * Held in static final fields, the handles are constants to the JIT and inline like direct calls.
+ */
+final class Tree {
+
+    private static final MethodHandle NEW_TREE;
+    private static final MethodHandle NEW_STUDENT;
+    private static final MethodHandle SEARCH;
+    private static final MethodHandle INSERT;
+    private static final MethodHandle DELETE;
+    private static final MethodHandle PRINT;
+    private static final MethodHandle BULK_LOAD;
+    private static final MethodHandle OPEN_DATA_FILE;
+    private static final MethodHandle GET_STUDENTS;
+    private static final MethodHandle CLOSE_DATA_FILE;
+    private static final MethodHandle NEW_ARENA_TREE;
+    private static final MethodHandle ARENA_SEARCH;
+    private static final MethodHandle ARENA_INSERT;
+    private static final MethodHandle ARENA_DELETE;
+    private static final MethodHandle ARENA_PRINT;
+    private static final MethodHandle ARENA_BULK_LOAD;
+
+    static {
+        try {
+            Class<?> bTree = Class.forName("BTree");
+            Class<?> student = Class.forName("Student");
+            Class<?> dataFile = Class.forName("StudentDataFile");
+            NEW_TREE = constructor(bTree, int.class);
+            NEW_STUDENT = constructor(student, long.class, int.class, String.class, String.class, String.class, long.class);
+            SEARCH = method(bTree, "search", long.class);
+            INSERT = method(bTree, "insert", student);
+            DELETE = method(bTree, "delete", long.class);
+            PRINT = method(bTree, "print");
+            BULK_LOAD = method(bTree, "bulkLoad", List.class);
+            OPEN_DATA_FILE = method(dataFile, "open", Path.class, double.class);
+            GET_STUDENTS = method(Class.forName("BTreeMain"), "getStudents", dataFile);
+            CLOSE_DATA_FILE = method(dataFile, "close");
+            Class<?> arenaTree = Class.forName("ArenaBTree");
+            NEW_ARENA_TREE = constructor(arenaTree, int.class, boolean.class);
+            ARENA_SEARCH = method(arenaTree, "search", long.class);
+            ARENA_INSERT = method(arenaTree, "insert", long.class, long.class);
+            ARENA_DELETE = method(arenaTree, "delete", long.class);
+            ARENA_PRINT = method(arenaTree, "print");
+            ARENA_BULK_LOAD = method(arenaTree, "bulkLoad", long[].class, long[].class, double.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * The BTree or ArenaBTree instance.
+     */
+    private final Object tree;
+    private final boolean arena;
+
+    private Tree(Object tree, boolean arena) {
+        this.tree = tree;
+        this.arena = arena;
+    }
+
+    /**
+     * Number of free student IDs after each loaded one, see {@link #key(long)}.
+     */
+    static final int GAP = 1 << 14;
+
+    /**
+     * Bulk load a tree of the given layout and degree with the student IDs key(0), key(1), ...,
+     * key(size - 1). The recordId of each student is its rank.
+     *
+     * @param layout The node layout.
+     * @param t      The minimum degree.
+     * @param size   The number of students.
+     * @return The tree.
+     */
+    static Tree withKeys(NodeLayout layout, int t, int size) {
+        if (layout != NodeLayout.OBJECTS) {
+            long[] keys = new long[size];
+            long[] values = new long[size];
+            for (int rank = 0; rank < size; rank++) {
+                keys[rank] = key(rank);
+                values[rank] = rank;
+            }
+            try {
+                Object tree = (Object) NEW_ARENA_TREE.invokeExact(t, layout == NodeLayout.PACKED);
+                ARENA_BULK_LOAD.invokeExact(tree, (Object) keys, (Object) values, 1.0);
+                return new Tree(tree, true);
+            } catch (Throwable e) {
+                throw propagate(e);
+            }
+        }
+        List<Object> students = new ArrayList<>(size);
+        for (int rank = 0; rank < size; rank++) {
+            students.add(student(key(rank), rank));
+        }
+        return withStudents(t, students);
+    }
+
+    /**
+     * Bulk load a tree of the given degree with the given students.
+     *
+     * @param t        The minimum degree.
+     * @param students Student objects, e.g. from {@link #loadCsv(Path)}.
+     * @return The tree.
+     */
+    static Tree withStudents(int t, List<?> students) {
+        try {
+            Object tree = (Object) NEW_TREE.invokeExact(t);
+            Object loaded = (Object) BULK_LOAD.invokeExact(tree, (Object) students);
+            return new Tree(loaded, false);
+        } catch (Throwable e) {
+            throw propagate(e);
+        }
+    }
+
+    /**
+     * @param rank Position of a student in a tree built by {@link #withKeys(NodeLayout, int, int)}.
+     * @return The student ID stored at that rank.
+     */
+    static long key(long rank) {
+        // Leave GAP free IDs after every student, so inserts can add new students next to any rank.
+        return rank * GAP;
+    }
+
+    /**
+     * Create a student with empty name, major and level.
+     */
+    static Object student(long studentId, long recordId) {
+        try {
+            return (Object) NEW_STUDENT.invokeExact(studentId, 20, (Object) "", (Object) "", (Object) "", recordId);
+        } catch (Throwable e) {
+            throw propagate(e);
+        }
+    }
+
+    /**
+     * Read a student CSV file the way BTreeMain does on startup.
+     *
+     * @param csv The CSV file.
+     * @return The student objects.
+     */
+    static List<?> loadCsv(Path csv) {
+        try {
+            Object dataFile = (Object) OPEN_DATA_FILE.invokeExact((Object) csv, 0.2);
+            try {
+                return (List<?>) (Object) GET_STUDENTS.invokeExact(dataFile);
+            } finally {
+                CLOSE_DATA_FILE.invokeExact(dataFile);
+            }
+        } catch (Throwable e) {
+            throw propagate(e);
+        }
+    }
+
+    long search(long studentId) {
+        try {
+            if (arena) {
+                return (long) ARENA_SEARCH.invokeExact(tree, studentId);
+            }
+            return (long) SEARCH.invokeExact(tree, studentId);
+        } catch (Throwable e) {
+            throw propagate(e);
+        }
+    }
+
+    void insert(long studentId, long recordId) {
+        try {
+            if (arena) {
+                ARENA_INSERT.invokeExact(tree, studentId, recordId);
+                return;
+            }
+            boolean stored = (boolean) INSERT.invokeExact(tree, student(studentId, recordId));
+        } catch (Throwable e) {
+            throw propagate(e);
+        }
+    }
+
+    boolean delete(long studentId) {
+        try {
+            if (arena) {
+                return (boolean) ARENA_DELETE.invokeExact(tree, studentId);
+            }
+            return (boolean) DELETE.invokeExact(tree, studentId);
+        } catch (Throwable e) {
+            throw propagate(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    List<Long> print() {
+        try {
+            if (arena) {
+                return (List<Long>) (Object) ARENA_PRINT.invokeExact(tree);
+            }
+            return (List<Long>) (Object) PRINT.invokeExact(tree);
+        } catch (Throwable e) {
+            throw propagate(e);
+        }
+    }
+
+    private static MethodHandle constructor(Class<?> type, Class<?>... parameters) throws ReflectiveOperationException {
+        Constructor<?> constructor = type.getDeclaredConstructor(parameters);
+        constructor.setAccessible(true);
+        return erase(MethodHandles.lookup().unreflectConstructor(constructor));
+    }
+
+    private static MethodHandle method(Class<?> type, String name, Class<?>... parameters) throws ReflectiveOperationException {
+        Method method = type.getDeclaredMethod(name, parameters);
+        method.setAccessible(true);
+        return erase(MethodHandles.lookup().unreflect(method));
+    }
+
+    private static MethodHandle erase(MethodHandle handle) {
+        // The tree's own types cannot be named here, so every reference type becomes Object.
+        return handle.asType(handle.type().erase());
+    }
+
+    private static RuntimeException propagate(Throwable e) {
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        return new IllegalStateException(e);
+    }
+}
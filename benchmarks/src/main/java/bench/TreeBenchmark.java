@@ -0,0 +1,34 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Parameters and tree shared by the read and write benchmarks. Each trial bulk loads a tree of the given
+ * layout, degree and size with the student IDs of {@link Tree#withKeys(NodeLayout, int, int)}.
+ */
+@State(Scope.Benchmark)
+public abstract class TreeBenchmark {
+
+    @Param({"OBJECTS", "ARENA", "PACKED"})
+    public NodeLayout layout;
+
+    @Param({"4", "16", "64", "256"})
+    public int t;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"SEQUENTIAL", "RANDOM", "ZIPFIAN"})
+    public KeyDistribution distribution;
+
+    Tree tree;
+
+    @Setup(Level.Trial)
+    public void loadTree() {
+        tree = Tree.withKeys(layout, t, size);
+    }
+}